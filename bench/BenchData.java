@@ -0,0 +1,40 @@
+import java.util.ArrayList;
+
+/*
+ * BenchData.java
+ *
+ * Generates deterministic recipe collections for the benchmark tools.  The
+ * same seed and size always give the same recipes.  The recipes come from
+ * CorpusGenerator, so their tags, ingredients and lengths are skewed the way
+ * real collections are.
+ */
+public class BenchData
+{
+    /*
+     * Generate a list of recipes
+     *
+     * @param count  Number of recipes to generate
+     * @param seed   Random seed
+     *
+     * @return the generated recipes
+     */
+    public static ArrayList<Recipe> generate(int count, long seed)
+    {
+        return generate(0, count, seed);
+    }
+
+    /*
+     * Generate one batch of a larger collection.  Titles are numbered from
+     * the given start, so batches can be combined without clashing.
+     *
+     * @param start  Number of the first recipe in the batch
+     * @param count  Number of recipes to generate
+     * @param seed   Random seed
+     *
+     * @return the generated recipes
+     */
+    public static ArrayList<Recipe> generate(int start, int count, long seed)
+    {
+        return new CorpusGenerator(seed, start).generate(count);
+    }
+}
@@ -0,0 +1,181 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/*
+ * GcPauseComparison.java
+ *
+ * Compares garbage collection pauses between recipe storages under a
+ * scripted browsing workload: viewing recipes (mostly popular ones),
+ * looking recipes up by title, refreshing the list, and editing now and
+ * then.  Pauses are timed from the JVM's garbage collection notifications.
+ *
+ * Each storage should be measured in its own JVM, with the same heap size,
+ * e.g.
+ *     java -Xmx2g -cp bin:bin-bench GcPauseComparison heap 1000000
+ *     java -Xmx2g -cp bin:bin-bench GcPauseComparison offheap 1000000
+ *
+ * Usage: java -cp bin:bin-bench GcPauseComparison <heap|columnar|offheap>
+ *            [recipes] [operations]
+ */
+public class GcPauseComparison
+{
+    // Number of recipes generated at a time while loading
+    private static final int BATCH_SIZE = 10000;
+
+    // Pause durations (ms) seen since listening started
+    private static final ArrayList<Long> pauses = new ArrayList<Long>();
+
+    public static void main(String[] args)
+    {
+        String kind = args.length > 0 ? args[0] : "heap";
+        int recipeCount = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+
+        RecipeStorage storage;
+        if (kind.equals("columnar"))
+        {
+            storage = new ColumnarRecipeStorage();
+        }
+        else if (kind.equals("offheap"))
+        {
+            storage = new OffHeapRecipeStorage();
+        }
+        else
+        {
+            storage = new HeapRecipeStorage();
+        }
+
+        System.out.printf("Loading %,d recipes into %s storage...\n", recipeCount, kind);
+        RecipeStore store = new RecipeStore(storage);
+        for (int start = 0; start < recipeCount; start += BATCH_SIZE)
+        {
+            store.load(BenchData.generate(start, Math.min(BATCH_SIZE, recipeCount - start), 42));
+        }
+        System.gc();
+
+        listenForPauses();
+        long start = System.nanoTime();
+        browse(store, operations);
+        long elapsed = System.nanoTime() - start;
+
+        report(kind, elapsed);
+    }
+
+    // Run the browsing workload
+    private static void browse(RecipeStore store, int operations)
+    {
+        Random random = new Random(7);
+        int limit = store.getIdLimit();
+        long checksum = 0;
+        for (int op = 0; op < operations; ++op)
+        {
+            // Favour a small set of popular recipes
+            int id = (int)(limit * Math.pow(random.nextDouble(), 3));
+            Recipe recipe = store.get(id);
+            if (recipe == null)
+            {
+                continue;
+            }
+
+            // View the recipe
+            checksum += recipe.getTitle().length() + recipe.getDescription().length()
+                + recipe.getIngredients().size() + recipe.getProcedure().size()
+                + recipe.getTags().size();
+
+            if (op % 50 == 0)
+            {
+                // Look another recipe up by title
+                Recipe other = store.get(random.nextInt(limit));
+                if (other != null && store.getByTitle(other.getTitle()) == null)
+                {
+                    throw new IllegalStateException("Title lookup failed");
+                }
+            }
+            if (op % 1000 == 0)
+            {
+                // Refresh the recipe list
+                checksum += store.getOrdering().toArray(RecipeOrdering.Order.TITLE).length;
+            }
+            if (op % 200 == 0)
+            {
+                // Edit the recipe
+                Recipe edited = BenchData.generate(id, 1, op).get(0);
+                edited.setTitle(recipe.getTitle());
+                store.replace(recipe, edited);
+            }
+        }
+        System.out.printf("(checksum %d)\n", checksum);
+    }
+
+    // Start recording the duration of every collection
+    private static void listenForPauses()
+    {
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification n, Object handback)
+            {
+                if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData)n.getUserData());
+                synchronized (pauses)
+                {
+                    pauses.add(info.getGcInfo().getDuration());
+                }
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            ((NotificationEmitter)gc).addNotificationListener(listener, null, null);
+        }
+    }
+
+    // Print a summary of the pauses
+    private static void report(String kind, long elapsedNanos)
+    {
+        long[] sorted;
+        synchronized (pauses)
+        {
+            sorted = new long[pauses.size()];
+            for (int i = 0; i < sorted.length; ++i)
+            {
+                sorted[i] = pauses.get(i);
+            }
+        }
+        Arrays.sort(sorted);
+
+        long total = 0;
+        for (long p : sorted)
+        {
+            total += p;
+        }
+
+        System.out.printf("%-10s %8s %10s %8s %8s %8s %10s\n",
+            "storage", "pauses", "total ms", "p50 ms", "p99 ms", "max ms", "run ms");
+        System.out.printf("%-10s %8d %10d %8d %8d %8d %10d\n",
+            kind, sorted.length, total,
+            percentile(sorted, 0.50), percentile(sorted, 0.99),
+            sorted.length > 0 ? sorted[sorted.length - 1] : 0,
+            elapsedNanos / 1000000);
+    }
+
+    // @return a percentile of sorted values (0 if there are none)
+    private static long percentile(long[] sorted, double p)
+    {
+        if (sorted.length == 0)
+        {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int)(p * sorted.length))];
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * HttpLoadTest.java
+ *
+ * Load test for the recipe server ("SAT --serve").  A number of clients
+ * each send requests back to back for a while, in a mix like a kitchen
+ * display's: mostly searches, some tag filters, tag lists and recipe
+ * fetches, and a few edits.  Then the throughput and the latency
+ * percentiles of each kind of request are reported.  The first few seconds
+ * are a warm-up, and not counted.
+ *
+ * The edits replace recipes with new versions, so run it against a copy of
+ * a recipes file, e.g. one from CorpusGenerator:
+ *     java -cp bin CorpusGenerator 100000 recipes.xml
+ *     java -cp bin SAT --serve 8080
+ *     java -cp bin:bin-bench HttpLoadTest http://localhost:8080 16 30
+ *
+ * Usage: java -cp bin:bin-bench HttpLoadTest [url] [clients] [seconds]
+ *            [edit percent]
+ */
+public class HttpLoadTest
+{
+    // Seconds of warm-up before measuring
+    private static final int WARMUP_SECONDS = 5;
+
+    // Search queries and tags requests are made with
+    private static final String[] QUERIES = {
+        "chicken", "garlic", "soup", "roast", "creamy", "tomato", "quick",
+        "spicy", "roast chicken", "salad", "pie", "ka", "", "lemon"
+    };
+    private static final String[] TAGS = {
+        "dinner", "vegan", "quick", "dessert", "easy", "vegetarian,lunch"
+    };
+
+    // Kinds of request
+    private static final String[] KINDS = { "search", "tag filter", "tags", "get", "edit" };
+    private static final int SEARCH = 0, TAG_FILTER = 1, TAGS_LIST = 2, GET = 3, EDIT = 4;
+
+    /*
+     * Latencies of one kind of request, recorded by one client
+     */
+    private static class Latencies
+    {
+        long[] nanos = new long[1024];
+        int count = 0;
+
+        void add(long n)
+        {
+            if (count == nanos.length)
+            {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = n;
+        }
+    }
+
+    // Requests that failed, across all clients
+    private static final AtomicLong errors = new AtomicLong();
+
+    public static void main(String[] args) throws Exception
+    {
+        final String base = args.length > 0 ? args[0] : "http://localhost:" + RecipeServer.DEFAULT_PORT;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        final int editPercent = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+        // Find some recipe IDs to fetch and edit
+        final ArrayList<Integer> ids = new ArrayList<Integer>();
+        Map<?, ?> listed = (Map<?, ?>)Json.parse(request("GET", base + "/recipes?limit=1000", null));
+        for (Object recipe : (List<?>)listed.get("recipes"))
+        {
+            ids.add(((Double)((Map<?, ?>)recipe).get("id")).intValue());
+        }
+        if (ids.isEmpty())
+        {
+            System.err.println("The server has no recipes to test with.");
+            System.exit(1);
+        }
+        System.out.printf("%d clients for %ds (after %ds warm-up) against %s, %d%% edits\n",
+            clients, seconds, WARMUP_SECONDS, base, editPercent);
+
+        final long start = System.nanoTime();
+        final long measureFrom = start + WARMUP_SECONDS * 1000000000L;
+        final long end = measureFrom + seconds * 1000000000L;
+        final Latencies[][] latencies = new Latencies[clients][KINDS.length];
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; ++c)
+        {
+            for (int k = 0; k < KINDS.length; ++k)
+            {
+                latencies[c][k] = new Latencies();
+            }
+            final Latencies[] mine = latencies[c];
+            final Random random = new Random(c);
+            threads[c] = new Thread("Load test client " + c) {
+                @Override
+                public void run()
+                {
+                    long now;
+                    while ((now = System.nanoTime()) < end)
+                    {
+                        int kind = pickKind(random, editPercent);
+                        try
+                        {
+                            long nanos = send(base, kind, random, ids);
+                            if (now >= measureFrom)
+                            {
+                                mine[kind].add(nanos);
+                            }
+                        }
+                        catch (IOException e)
+                        {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[c].start();
+        }
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+
+        report(latencies, seconds);
+    }
+
+    // @return a kind of request, in the test's mix
+    private static int pickKind(Random random, int editPercent)
+    {
+        int r = random.nextInt(100);
+        if (r < editPercent)
+        {
+            return EDIT;
+        }
+        r = random.nextInt(100);
+        return r < 60 ? SEARCH : r < 75 ? TAG_FILTER : r < 80 ? TAGS_LIST : GET;
+    }
+
+    /*
+     * Send one request
+     *
+     * @return nanoseconds taken (for an edit, just the PUT)
+     */
+    private static long send(String base, int kind, Random random, ArrayList<Integer> ids) throws IOException
+    {
+        String query = URLEncoder.encode(QUERIES[random.nextInt(QUERIES.length)], "UTF-8");
+        int id = ids.get(random.nextInt(ids.size()));
+        switch (kind)
+        {
+        case SEARCH:
+            return timed("GET", base + "/recipes?q=" + query, null);
+        case TAG_FILTER:
+            return timed("GET", base + "/recipes?q=" + query + "&tags=" +
+                URLEncoder.encode(TAGS[random.nextInt(TAGS.length)], "UTF-8"), null);
+        case TAGS_LIST:
+            return timed("GET", base + "/tags", null);
+        case GET:
+            return timed("GET", base + "/recipes/" + id, null);
+        default:
+            return timed("PUT", base + "/recipes/" + id, edited(request("GET", base + "/recipes/" + id, null)));
+        }
+    }
+
+    // @return a recipe's JSON with its description changed
+    private static String edited(String json)
+    {
+        Map<?, ?> recipe = (Map<?, ?>)Json.parse(json);
+        StringBuilder sb = new StringBuilder("{\"title\":");
+        Json.quote(sb, (String)recipe.get("title"));
+        sb.append(",\"description\":");
+        Json.quote(sb, "Edited by the load test at " + System.nanoTime());
+        sb.append(",\"servings\":").append(((Double)recipe.get("servings")).intValue());
+        for (String list : new String[] { "ingredients", "procedure", "tags" })
+        {
+            sb.append(",\"").append(list).append("\":");
+            Json.quote(sb, strings((List<?>)recipe.get(list)));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static List<String> strings(List<?> values)
+    {
+        ArrayList<String> strings = new ArrayList<String>(values.size());
+        for (Object value : values)
+        {
+            strings.add((String)value);
+        }
+        return strings;
+    }
+
+    // @return nanoseconds taken by a request
+    private static long timed(String method, String url, String body) throws IOException
+    {
+        long start = System.nanoTime();
+        request(method, url, body);
+        return System.nanoTime() - start;
+    }
+
+    /*
+     * Send a request and read the whole response (so the connection can be
+     * kept alive)
+     *
+     * @return the response body
+     *
+     * @throws IOException if it fails, or the status isn't a success
+     */
+    private static String request(String method, String url, String body) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null)
+        {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            OutputStream out = connection.getOutputStream();
+            out.write(body.getBytes("UTF-8"));
+            out.close();
+        }
+
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        if (in != null)
+        {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                response.write(buffer, 0, n);
+            }
+            in.close();
+        }
+        if (status >= 400)
+        {
+            throw new IOException("HTTP " + status + " from " + url + ": " + response.toString("UTF-8"));
+        }
+        return response.toString("UTF-8");
+    }
+
+    // Print throughput and latency percentiles for each kind of request
+    private static void report(Latencies[][] latencies, int seconds)
+    {
+        System.out.println();
+        System.out.printf("%-12s %9s %9s %9s %9s %9s %9s %9s\n",
+            "Request", "count", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        long[] all = new long[0];
+        for (int k = 0; k < KINDS.length; ++k)
+        {
+            long[] merged = new long[0];
+            for (Latencies[] client : latencies)
+            {
+                merged = concat(merged, client[k].nanos, client[k].count);
+            }
+            print(KINDS[k], merged, seconds);
+            all = concat(all, merged, merged.length);
+        }
+        print("all", all, seconds);
+
+        System.out.printf("\n%,d requests failed\n", errors.get());
+    }
+
+    private static void print(String name, long[] nanos, int seconds)
+    {
+        Arrays.sort(nanos);
+        System.out.printf("%-12s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f\n",
+            name, nanos.length, nanos.length / (double)seconds,
+            percentile(nanos, 50), percentile(nanos, 90), percentile(nanos, 99),
+            percentile(nanos, 99.9), percentile(nanos, 100));
+    }
+
+    // @return the value at a percentile of sorted nanoseconds, in ms
+    private static double percentile(long[] sorted, double percent)
+    {
+        if (sorted.length == 0)
+        {
+            return 0;
+        }
+        int rank = (int)Math.ceil(sorted.length * percent / 100);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static long[] concat(long[] a, long[] b, int bCount)
+    {
+        long[] c = Arrays.copyOf(a, a.length + bCount);
+        System.arraycopy(b, 0, c, a.length, bCount);
+        return c;
+    }
+}
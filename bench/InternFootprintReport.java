@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * InternFootprintReport.java
+ *
+ * Reports how much heap the string pool saves on a generated collection.
+ * Recipes are copied so that every ingredient line is its own String
+ * instance (as it is after the XML loader has read it), the heap is
+ * measured, and then the strings are run through the pool and the heap is
+ * measured again.  (Tags are shared through the tag dictionary, so they
+ * don't need pooling.)
+ *
+ * Usage: java -cp bin:bin-bench InternFootprintReport [recipes]
+ */
+public class InternFootprintReport
+{
+    public static void main(String[] args)
+    {
+        int recipeCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        System.out.printf("Generating %,d recipes...\n", recipeCount);
+        ArrayList<Recipe> recipes = copyAll(BenchData.generate(recipeCount, 42));
+
+        long before = usedHeap();
+        for (Recipe r : recipes)
+        {
+            r.internStrings();
+        }
+        long after = usedHeap();
+
+        System.out.printf("%-22s %,14d bytes (%,d per recipe)\n",
+            "Fresh strings:", before, before / recipeCount);
+        System.out.printf("%-22s %,14d bytes (%,d per recipe)\n",
+            "Pooled strings:", after, after / recipeCount);
+        System.out.printf("%-22s %,14d bytes (%.1f%%)\n",
+            "Saved:", before - after, 100.0 * (before - after) / before);
+        System.out.printf("%-22s %,14d\n", "Distinct values:", StringPool.size());
+
+        // Keep the recipes reachable until we're done measuring
+        System.out.printf("(%,d recipes)\n", recipes.size());
+    }
+
+    // @return copies of recipes with a new String for every ingredient
+    //         line, as if they had just been loaded
+    private static ArrayList<Recipe> copyAll(ArrayList<Recipe> recipes)
+    {
+        ArrayList<Recipe> copies = new ArrayList<Recipe>(recipes.size());
+        for (Recipe r : recipes)
+        {
+            Recipe copy = new Recipe();
+            copy.setTitle(r.getTitle());
+            copy.setDescription(r.getDescription());
+            copy.setIngredients(copyStrings(r.getIngredients()));
+            copy.setProcedure(r.getProcedure());
+            copy.setTags(r.getTags());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    // @return a list of new String instances equal to the given ones
+    private static ArrayList<String> copyStrings(List<String> strings)
+    {
+        ArrayList<String> copy = new ArrayList<String>(strings.size());
+        for (String s : strings)
+        {
+            copy.add(new String(s));
+        }
+        return copy;
+    }
+
+    // @return bytes of heap in use after collecting garbage
+    private static long usedHeap()
+    {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i)
+        {
+            System.gc();
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,446 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/*
+ * PerfRegressionSuite.java
+ *
+ * Drives the program's core operations end to end on a generated
+ * collection, headless, and checks each against latency and allocation
+ * budgets:
+ *
+ *   cold start         read the recipes file into a new store and populate
+ *                      the recipe list (after one untimed load, so this is
+ *                      the program's start-up work rather than the JVM's)
+ *   keystroke search   type queries one key at a time (50 keys, with
+ *                      backspaces), searching and re-listing after each, as
+ *                      the search window does
+ *   tag toggle         select and deselect tags in the tag filter, filtering,
+ *                      searching and re-listing after each
+ *   edit save reload   save an edited recipe, write the recipes file, and
+ *                      read it back into a new store
+ *
+ * Everything is done through a RecipeEngine, as the program does.  The p50
+ * and p99 latencies and the bytes allocated per operation (by all
+ * threads, so parallel searches are counted) are compared with the budgets
+ * below.  Any operation over budget is reported, and the suite exits with
+ * status 1, so it can gate a build.
+ *
+ * Budgets were measured on JDK 8 (the program's target) at the default
+ * collection size, with headroom, and are scaled in proportion for other
+ * sizes.  To allow for slower machines, scale the latency budgets with
+ * -Dsat.perf.slack=<percent> (default 100).  Allocation doesn't depend on
+ * the machine, but does on the JDK (strings are smaller from Java 9 on), so
+ * the allocation budgets are scaled separately, with
+ * -Dsat.perf.allocSlack=<percent> (default 100).
+ *
+ * Usage: java -cp bin:bin-bench PerfRegressionSuite [recipes] [rounds]
+ */
+public class PerfRegressionSuite
+{
+    // Collection size the budgets are set for
+    private static final int BUDGET_RECIPES = 100000;
+
+    // Percentages the latency and allocation budgets are scaled by
+    private static final int SLACK = Integer.getInteger("sat.perf.slack", 100);
+    private static final int ALLOC_SLACK = Integer.getInteger("sat.perf.allocSlack", 100);
+
+    // Keys typed in the keystroke search ('\b' is backspace)
+    private static final String KEYSTROKES =
+        "garlic\b\b\b\b\b\broast chicken\b\b\b\b\b\b\bcreamy tomato soup";
+
+    // Tags toggled in the tag toggle (each is selected, then deselected in
+    // the same order)
+    private static final String[] TOGGLED_TAGS = {
+        "dinner", "vegan", "quick", "dessert", "italian", "spicy", "kids"
+    };
+
+    /*
+     * Budget for an operation: p50 and p99 latency in milliseconds, and
+     * bytes allocated per operation (at the median)
+     */
+    private static class Budget
+    {
+        final String name;
+        final double p50Ms, p99Ms;
+        final long allocBytes;
+
+        Budget(String name, double p50Ms, double p99Ms, long allocBytes)
+        {
+            this.name = name;
+            this.p50Ms = p50Ms;
+            this.p99Ms = p99Ms;
+            this.allocBytes = allocBytes;
+        }
+
+        // @return this budget scaled for a collection size
+        Budget scaled(int recipes)
+        {
+            double size = (double)recipes / BUDGET_RECIPES;
+            double scale = size * SLACK / 100;
+            return new Budget(name, p50Ms * scale, p99Ms * scale,
+                (long)(allocBytes * size * ALLOC_SLACK / 100));
+        }
+    }
+
+    private static final long MB = 1024 * 1024;
+
+    // Measured on JDK 8u392 at 100,000 recipes: cold start p50 about 6s,
+    // keystroke search 63MB and tag toggle 12MB per operation
+    private static final Budget COLD_START = new Budget("cold start", 9000, 13500, 3072 * MB);
+    private static final Budget KEYSTROKE_SEARCH = new Budget("keystroke search", 160, 250, 96 * MB);
+    private static final Budget TAG_TOGGLE = new Budget("tag toggle", 50, 120, 18 * MB);
+    private static final Budget EDIT_SAVE_RELOAD = new Budget("edit save reload", 12000, 18000, 6144 * MB);
+
+    /*
+     * Measurements of one operation
+     */
+    private static class Samples
+    {
+        final Budget budget;
+        final ArrayList<Long> nanos = new ArrayList<Long>();
+        final ArrayList<Long> allocated = new ArrayList<Long>();
+
+        // Start of the operation being measured
+        private long startNanos, startAllocated;
+
+        Samples(Budget budget)
+        {
+            this.budget = budget;
+        }
+
+        void start()
+        {
+            startAllocated = allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        void stop()
+        {
+            long elapsed = System.nanoTime() - startNanos;
+            nanos.add(elapsed);
+            allocated.add(allocatedBytes() - startAllocated);
+        }
+
+        double percentileMs(double percent)
+        {
+            return percentile(nanos, percent) / 1e6;
+        }
+
+        long medianAllocated()
+        {
+            return percentile(allocated, 50);
+        }
+    }
+
+    // Thread bean, if it can count allocations (otherwise null)
+    private static final com.sun.management.ThreadMXBean threads = allocationCounter();
+
+    public static void main(String[] args) throws Exception
+    {
+        System.setProperty("java.awt.headless", "true");
+        int recipeCount = args.length > 0 ? Integer.parseInt(args[0]) : BUDGET_RECIPES;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File file = File.createTempFile("sat-perf", ".xml");
+        file.deleteOnExit();
+        System.out.printf("Generating %,d recipes...\n", recipeCount);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try
+        {
+            new CorpusGenerator(42).write(recipeCount, out);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        ArrayList<Samples> results = new ArrayList<Samples>();
+        RecipeEngine engine = coldStart(file, rounds, recipeCount, results);
+        keystrokeSearch(engine, rounds, recipeCount, results);
+        tagToggle(engine, rounds, recipeCount, results);
+        editSaveReload(engine, rounds, recipeCount, results);
+
+        System.exit(report(recipeCount, results) ? 0 : 1);
+    }
+
+    /*
+     * Read the recipes file into a new store and populate the list, once
+     * untimed to warm up and then once per round
+     *
+     * @return the last engine loaded
+     */
+    private static RecipeEngine coldStart(File file, int rounds, int recipes, ArrayList<Samples> results)
+        throws Exception
+    {
+        Samples samples = new Samples(COLD_START.scaled(recipes));
+        RecipeEngine engine = null;
+        for (int round = 0; round <= rounds; ++round)
+        {
+            engine = null;
+            System.gc();
+            System.out.printf("%s %d/%d\n", samples.budget.name, round, rounds);
+
+            if (round > 0)
+            {
+                samples.start();
+            }
+            engine = loadAndList(file);
+            if (round > 0)
+            {
+                samples.stop();
+            }
+        }
+        results.add(samples);
+        return engine;
+    }
+
+    // @return a new engine loaded from a file, after listing its recipes
+    private static RecipeEngine loadAndList(File file) throws Exception
+    {
+        RecipeEngine engine = new RecipeEngine(file);
+        engine.load();
+        new RecipeListModel().setRecipes(engine.getOrdering().toArray(RecipeOrdering.Order.TITLE), null);
+        return engine;
+    }
+
+    /*
+     * Type the keystroke script once per round (plus a warm-up round),
+     * searching the whole collection and re-listing the results after each
+     * key
+     */
+    private static void keystrokeSearch(RecipeEngine engine, int rounds, int recipes, ArrayList<Samples> results)
+    {
+        Samples samples = new Samples(KEYSTROKE_SEARCH.scaled(recipes));
+        RecipeSearch search = engine.newSearch();
+        RecipeListModel model = new RecipeListModel();
+
+        for (int round = 0; round <= rounds; ++round)
+        {
+            StringBuilder query = new StringBuilder();
+            for (int i = 0; i < KEYSTROKES.length(); ++i)
+            {
+                char key = KEYSTROKES.charAt(i);
+                if (key == '\b')
+                {
+                    query.setLength(query.length() - 1);
+                }
+                else
+                {
+                    query.append(key);
+                }
+
+                if (round > 0)
+                {
+                    samples.start();
+                }
+                search.setQuery(query.toString());
+                int[] found = search.search();
+                model.setRecipes(search.getRecipes(), found);
+                if (round > 0)
+                {
+                    samples.stop();
+                }
+            }
+        }
+        results.add(samples);
+    }
+
+    /*
+     * Select each tag in turn, then deselect them, once per round (plus a
+     * warm-up round), re-filtering, searching and re-listing after each
+     * toggle
+     */
+    private static void tagToggle(RecipeEngine engine, int rounds, int recipes, ArrayList<Samples> results)
+    {
+        Samples samples = new Samples(TAG_TOGGLE.scaled(recipes));
+        RecipeSearch search = engine.newSearch();
+        search.setQuery("chicken");
+        RecipeListModel model = new RecipeListModel();
+        HashSet<String> selected = new HashSet<String>();
+
+        for (int round = 0; round <= rounds; ++round)
+        {
+            for (int i = 0; i < TOGGLED_TAGS.length * 2; ++i)
+            {
+                String tag = TOGGLED_TAGS[i % TOGGLED_TAGS.length];
+                if (!selected.remove(tag))
+                {
+                    selected.add(tag);
+                }
+
+                if (round > 0)
+                {
+                    samples.start();
+                }
+                search.setTags(selected, selected.isEmpty());
+                int[] found = search.search();
+                model.setRecipes(search.getRecipes(), found);
+                if (round > 0)
+                {
+                    samples.stop();
+                }
+            }
+        }
+        results.add(samples);
+    }
+
+    /*
+     * Edit a recipe, save it and write the file, then read the file back
+     * into a new store, once per round (plus a warm-up round)
+     */
+    private static void editSaveReload(RecipeEngine engine, int rounds, int recipes,
+        ArrayList<Samples> results) throws Exception
+    {
+        Samples samples = new Samples(EDIT_SAVE_RELOAD.scaled(recipes));
+        for (int round = 0; round <= rounds; ++round)
+        {
+            System.gc();
+            System.out.printf("%s %d/%d\n", samples.budget.name, round, rounds);
+
+            // Edit a recipe as the editor would: a new version with the same
+            // title and a changed description
+            Recipe old = engine.get(round % engine.getStore().getIdLimit());
+            if (old == null)
+            {
+                old = engine.getSnapshot().getRecipes().get(0);
+            }
+            Recipe edited = new Recipe(old.getTitle(), old.getDescription() + " Edited " + round + ".",
+                new ArrayList<String>(old.getIngredients()), new ArrayList<String>(old.getProcedure()),
+                new HashSet<String>(old.getTags()));
+            edited.setServings(old.getServings());
+
+            if (round > 0)
+            {
+                samples.start();
+            }
+            engine.replace(old, edited);
+            engine.save();
+            engine = loadAndList(engine.getFile());
+            if (round > 0)
+            {
+                samples.stop();
+            }
+        }
+        results.add(samples);
+    }
+
+    /*
+     * Print the results, and every budget that was exceeded
+     *
+     * @return true if everything was within budget
+     */
+    private static boolean report(int recipes, ArrayList<Samples> results)
+    {
+        System.out.println();
+        System.out.printf("Performance regression suite: %,d recipes, budgets at %d%%\n", recipes, SLACK);
+        System.out.printf("%-18s %7s %10s %10s %10s %10s %12s %12s\n",
+            "Operation", "Samples", "p50 ms", "budget", "p99 ms", "budget", "alloc/op", "budget");
+
+        ArrayList<String> failures = new ArrayList<String>();
+        for (Samples s : results)
+        {
+            Budget b = s.budget;
+            double p50 = s.percentileMs(50);
+            double p99 = s.percentileMs(99);
+            long alloc = s.medianAllocated();
+
+            System.out.printf("%-18s %7d %10.2f %10.2f %10.2f %10.2f %12s %12s\n",
+                b.name, s.nanos.size(), p50, b.p50Ms, p99, b.p99Ms,
+                threads == null ? "n/a" : bytes(alloc), bytes(b.allocBytes));
+
+            check(failures, b.name, "p50 latency", p50, b.p50Ms, "ms");
+            check(failures, b.name, "p99 latency", p99, b.p99Ms, "ms");
+            if (threads != null)
+            {
+                check(failures, b.name, "allocation", alloc / (double)MB, b.allocBytes / (double)MB, "MB");
+            }
+        }
+
+        System.out.println();
+        if (threads == null)
+        {
+            System.out.println("This JVM can't count allocated bytes; allocation budgets were not checked.");
+        }
+        if (failures.isEmpty())
+        {
+            System.out.println("PASSED: every operation is within budget.");
+            return true;
+        }
+
+        System.out.printf("FAILED: %d budget(s) exceeded\n", failures.size());
+        for (String failure : failures)
+        {
+            System.out.println("  " + failure);
+        }
+        return false;
+    }
+
+    // Note a failure if a measurement is over budget
+    private static void check(ArrayList<String> failures, String name, String what,
+        double measured, double budget, String unit)
+    {
+        if (measured > budget)
+        {
+            failures.add(String.format("%s: %s %.2f%s is over budget %.2f%s (+%.0f%%)",
+                name, what, measured, unit, budget, unit, (measured / budget - 1) * 100));
+        }
+    }
+
+    // @return a byte count in readable units
+    private static String bytes(long bytes)
+    {
+        return bytes >= 10 * MB ? String.format("%,dMB", bytes / MB) : String.format("%,dKB", bytes / 1024);
+    }
+
+    // @return the value at a percentile (nearest rank)
+    private static long percentile(ArrayList<Long> values, double percent)
+    {
+        if (values.isEmpty())
+        {
+            return 0;
+        }
+        Long[] sorted = values.toArray(new Long[values.size()]);
+        Arrays.sort(sorted);
+        int rank = (int)Math.ceil(sorted.length * percent / 100);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    // @return the thread bean, if it can count allocated bytes
+    private static com.sun.management.ThreadMXBean allocationCounter()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+        {
+            return null;
+        }
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)bean;
+        if (!counter.isThreadAllocatedMemorySupported())
+        {
+            return null;
+        }
+        counter.setThreadAllocatedMemoryEnabled(true);
+        return counter;
+    }
+
+    // @return bytes allocated so far by all live threads
+    private static long allocatedBytes()
+    {
+        if (threads == null)
+        {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+        {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * SearchScalingBenchmark.java
+ *
+ * Measures how RecipeSearchEngine's tag filtering and text searching scale
+ * from one core up to all available cores.
+ *
+ * Usage: java -cp bin:bin-bench SearchScalingBenchmark [recipes] [iterations]
+ */
+public class SearchScalingBenchmark
+{
+    public static void main(String[] args)
+    {
+        int recipeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int maxCores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("Generating %,d recipes...\n", recipeCount);
+        ArrayList<Recipe> recipes = BenchData.generate(recipeCount, 42);
+
+        HashSet<String> tags = new HashSet<String>();
+        tags.add("dinner");
+        tags.add("vegan");
+
+        System.out.printf("%6s %14s %14s %10s\n", "cores", "tags (ms)", "text (ms)", "speedup");
+        double baseline = 0;
+        for (int cores = 1; cores <= maxCores; ++cores)
+        {
+            ForkJoinPool pool = new ForkJoinPool(cores);
+
+            // Threshold of zero forces every search onto the pool
+            RecipeSearchEngine engine = new RecipeSearchEngine(pool, 0);
+            engine.setRecipes(recipes.toArray(new Recipe[recipes.size()]));
+
+            // Warm up
+            for (int i = 0; i < 5; ++i)
+            {
+                engine.search(engine.filterByTags(tags, true), "garlic");
+            }
+
+            long tagNanos = 0, textNanos = 0;
+            int results = 0;
+            for (int i = 0; i < iterations; ++i)
+            {
+                long start = System.nanoTime();
+                int[] filtered = engine.filterByTags(tags, true);
+                long mid = System.nanoTime();
+                results = engine.search(filtered, "garlic").length;
+                long end = System.nanoTime();
+
+                tagNanos += mid - start;
+                textNanos += end - mid;
+            }
+
+            double tagMs = tagNanos / 1e6 / iterations;
+            double textMs = textNanos / 1e6 / iterations;
+            if (cores == 1)
+            {
+                baseline = tagMs + textMs;
+            }
+            System.out.printf("%6d %14.2f %14.2f %9.2fx   (%,d results)\n",
+                cores, tagMs, textMs, baseline / (tagMs + textMs), results);
+
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * StorageFootprintReport.java
+ *
+ * Compares how much heap a recipe store takes with the default heap storage
+ * and with the compact columnar storage.  Recipes are generated and loaded
+ * in batches, so that only the store itself is left on the heap.
+ *
+ * Usage: java -cp bin:bin-bench StorageFootprintReport [recipes]
+ */
+public class StorageFootprintReport
+{
+    // Number of recipes generated at a time
+    private static final int BATCH_SIZE = 10000;
+
+    public static void main(String[] args)
+    {
+        int recipeCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+
+        System.out.printf("%-10s %16s %16s\n", "storage", "heap (bytes)", "per recipe");
+        report("heap", new HeapRecipeStorage(), recipeCount);
+        report("columnar", new ColumnarRecipeStorage(), recipeCount);
+    }
+
+    // Fill a store using the given storage, and print the heap it takes
+    private static void report(String name, RecipeStorage storage, int recipeCount)
+    {
+        long before = usedHeap();
+
+        RecipeStore store = new RecipeStore(storage);
+        for (int start = 0; start < recipeCount; start += BATCH_SIZE)
+        {
+            store.load(BenchData.generate(start, Math.min(BATCH_SIZE, recipeCount - start), 42));
+        }
+
+        long used = usedHeap() - before;
+        System.out.printf("%-10s %,16d %,16d\n", name, used, used / store.size());
+        if (storage instanceof ColumnarRecipeStorage)
+        {
+            long arena = ((ColumnarRecipeStorage)storage).getArenaSize();
+            System.out.printf("%-10s %,16d %,16d\n", "  (arena)", arena, arena / store.size());
+        }
+    }
+
+    // @return bytes of heap in use after collecting garbage
+    private static long usedHeap()
+    {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i)
+        {
+            System.gc();
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.TimeUnit;
+import javax.swing.text.DefaultStyledDocument;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * DocumentBuildBenchmark.java
+ *
+ * Building the recipe viewer's styled document, as RecipeViewComponent
+ * does for a recipe that isn't cached.  Each invocation builds the next
+ * recipe in the collection, so the cost of reading recipes out of storage
+ * and parsing their ingredients is included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DocumentBuildBenchmark
+{
+    private Recipe[] recipes;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp(RecipeCorpus corpus)
+    {
+        recipes = corpus.store.getOrdering().toArray(RecipeOrdering.Order.TITLE);
+    }
+
+    @Benchmark
+    public DefaultStyledDocument build()
+    {
+        Recipe recipe = recipes[next];
+        next = (next + 1) % recipes.length;
+        return RecipeDocumentBuilder.build(recipe, recipe.getServings());
+    }
+}
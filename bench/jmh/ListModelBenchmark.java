@@ -0,0 +1,39 @@
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * ListModelBenchmark.java
+ *
+ * Populating the recipe list, as RecipeListComponent.refresh() does: take
+ * the recipes in the chosen order from the store's ordering index, and
+ * replace the list model's contents with them.  The visible rows are then
+ * read back, as painting them would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ListModelBenchmark
+{
+    // Number of rows visible in the list
+    private static final int VISIBLE_ROWS = 40;
+
+    @Param({ "TITLE", "RECENTLY_VIEWED" })
+    public RecipeOrdering.Order order;
+
+    private final RecipeListModel model = new RecipeListModel();
+
+    @Benchmark
+    public void refresh(RecipeCorpus corpus, Blackhole bh)
+    {
+        model.setRecipes(corpus.store.getOrdering().toArray(order), null);
+        for (int i = 0; i < VISIBLE_ROWS && i < model.getSize(); ++i)
+        {
+            bh.consume(model.getElementAt(i));
+        }
+        bh.consume(corpus.store.getOrdering().getLongestTitle());
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * PersistenceBenchmark.java
+ *
+ * Reading and writing the recipes file, as SAT.readRecipesFromDisk() and
+ * SAT.saveRecipesToDisk() do: XML through RecipeFile, then loading into (or
+ * taking a snapshot of) a recipe store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class PersistenceBenchmark
+{
+    // File written once per trial for the read benchmark, and a file for
+    // the write benchmark to overwrite
+    private File readFile, writeFile;
+
+    @Setup(Level.Trial)
+    public void setUp(RecipeCorpus corpus) throws Exception
+    {
+        readFile = File.createTempFile("bench-read", ".xml");
+        writeFile = File.createTempFile("bench-write", ".xml");
+        readFile.deleteOnExit();
+        writeFile.deleteOnExit();
+        RecipeFile.write(corpus.store.getSnapshot().getRecipes(), readFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        readFile.delete();
+        writeFile.delete();
+    }
+
+    @Benchmark
+    public RecipeStore load() throws Exception
+    {
+        RecipeStore store = new RecipeStore();
+        store.load(RecipeFile.read(readFile));
+        return store;
+    }
+
+    @Benchmark
+    public long save(RecipeCorpus corpus) throws Exception
+    {
+        RecipeFile.write(corpus.store.getSnapshot().getRecipes(), writeFile);
+        return writeFile.length();
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * RecipeCorpus.java
+ *
+ * Shared JMH state: a generated collection loaded into a recipe store.  The
+ * collection size is a benchmark parameter, so every suite runs at each
+ * size and regressions that only show up at scale are caught.
+ */
+@State(Scope.Benchmark)
+public class RecipeCorpus
+{
+    // Number of recipes in the collection
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    // Generated recipes, and the store they were loaded into
+    public ArrayList<Recipe> recipes;
+    public RecipeStore store;
+
+    // Tags selected for tag filtering benchmarks
+    public final HashSet<String> selectedTags = new HashSet<String>();
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        recipes = BenchData.generate(size, 42);
+        store = new RecipeStore();
+        store.load(recipes);
+
+        selectedTags.add("dinner");
+        selectedTags.add("vegan");
+        selectedTags.add("quick");
+    }
+}
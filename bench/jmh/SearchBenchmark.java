@@ -0,0 +1,47 @@
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * SearchBenchmark.java
+ *
+ * The search window's paths: tag filtering, and text searching of the
+ * tag-filtered recipes as RecipeSearchComponent.refreshRecipeList() does on
+ * each keystroke.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SearchBenchmark
+{
+    // Query typed into the search field
+    @Param({ "garlic", "roast chicken" })
+    public String query;
+
+    private RecipeSearchEngine engine;
+
+    // Result of the tag filter, for the text search benchmark
+    private int[] filtered;
+
+    @Setup(Level.Trial)
+    public void setUp(RecipeCorpus corpus)
+    {
+        engine = new RecipeSearchEngine();
+        engine.setRecipes(corpus.store.getOrdering().toArray(RecipeOrdering.Order.TITLE));
+        filtered = engine.filterByTags(corpus.selectedTags, true);
+    }
+
+    @Benchmark
+    public int[] tagFilter(RecipeCorpus corpus)
+    {
+        return engine.filterByTags(corpus.selectedTags, true);
+    }
+
+    @Benchmark
+    public int[] textSearch()
+    {
+        return engine.search(filtered, query);
+    }
+}
@@ -0,0 +1,256 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * JfrRecipeEvents.java
+ *
+ * Java Flight Recorder events behind RecipeEvents.  This needs the jdk.jfr
+ * API (JDK 8u262 and later, which the program runs on; it refuses to start
+ * on Java 11 and 12), so it is kept out of src/ and built on its own with
+ * "make jfr"; run with bin-jfr on the class path to use it.
+ *
+ * Begin methods check whether JFR is recording the event type before making
+ * an event, so nothing is allocated while recording is off.
+ */
+public class JfrRecipeEvents extends RecipeEvents
+{
+    @Name("sat.RecipeLoad")
+    @Label("Recipe Load")
+    @Category("Recipe Management")
+    @Description("Reading the recipes file")
+    static class LoadEvent extends Event
+    {
+        @Label("Recipes")
+        int recipes;
+
+        @Label("File Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("sat.RecipeSave")
+    @Label("Recipe Save")
+    @Category("Recipe Management")
+    @Description("Writing the recipes file")
+    static class SaveEvent extends Event
+    {
+        @Label("Recipes")
+        int recipes;
+
+        @Label("File Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("sat.RecipeSearch")
+    @Label("Recipe Search")
+    @Category("Recipe Management")
+    @Description("Text search of the tag-filtered recipes")
+    static class SearchEvent extends Event
+    {
+        @Label("Query Length")
+        int queryLength;
+
+        @Label("Candidates")
+        int candidates;
+
+        @Label("Results")
+        int results;
+    }
+
+    @Name("sat.RecipeTagFilter")
+    @Label("Recipe Tag Filter")
+    @Category("Recipe Management")
+    @Description("Finding the recipes with any of the selected tags")
+    static class TagFilterEvent extends Event
+    {
+        @Label("Selected Tags")
+        int tags;
+
+        @Label("Include Untagged")
+        boolean includeUntagged;
+
+        @Label("Recipes")
+        int recipes;
+
+        @Label("Results")
+        int results;
+    }
+
+    @Name("sat.RecipeRender")
+    @Label("Recipe Render")
+    @Category("Recipe Management")
+    @Description("Showing a recipe in the viewer, from request until it is on screen")
+    static class RenderEvent extends Event
+    {
+        @Label("Recipe ID")
+        int recipeId;
+
+        @Label("Servings")
+        int servings;
+
+        @Label("Cached")
+        boolean cached;
+    }
+
+    @Name("sat.RecipeStoreMutation")
+    @Label("Recipe Store Mutation")
+    @Category("Recipe Management")
+    @Description("Adding, replacing or removing a stored recipe")
+    static class MutationEvent extends Event
+    {
+        @Label("Kind")
+        String kind;
+
+        @Label("Recipe ID")
+        int recipeId;
+
+        @Label("Store Size")
+        int size;
+    }
+
+    // Types of the events, to check whether they are being recorded
+    private static final EventType LOAD = EventType.getEventType(LoadEvent.class);
+    private static final EventType SAVE = EventType.getEventType(SaveEvent.class);
+    private static final EventType SEARCH = EventType.getEventType(SearchEvent.class);
+    private static final EventType TAG_FILTER = EventType.getEventType(TagFilterEvent.class);
+    private static final EventType RENDER = EventType.getEventType(RenderEvent.class);
+    private static final EventType MUTATION = EventType.getEventType(MutationEvent.class);
+
+    // @return the event, begun
+    private static Event begin(Event event)
+    {
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public boolean isAvailable()
+    {
+        return true;
+    }
+
+    @Override
+    public Object beginLoad()
+    {
+        return LOAD.isEnabled() ? begin(new LoadEvent()) : null;
+    }
+
+    @Override
+    public void endLoad(Object event, int recipes, long bytes)
+    {
+        if (event != null)
+        {
+            LoadEvent e = (LoadEvent)event;
+            e.end();
+            e.recipes = recipes;
+            e.bytes = bytes;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginSave()
+    {
+        return SAVE.isEnabled() ? begin(new SaveEvent()) : null;
+    }
+
+    @Override
+    public void endSave(Object event, int recipes, long bytes)
+    {
+        if (event != null)
+        {
+            SaveEvent e = (SaveEvent)event;
+            e.end();
+            e.recipes = recipes;
+            e.bytes = bytes;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginSearch()
+    {
+        return SEARCH.isEnabled() ? begin(new SearchEvent()) : null;
+    }
+
+    @Override
+    public void endSearch(Object event, int queryLength, int candidates, int results)
+    {
+        if (event != null)
+        {
+            SearchEvent e = (SearchEvent)event;
+            e.end();
+            e.queryLength = queryLength;
+            e.candidates = candidates;
+            e.results = results;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginTagFilter()
+    {
+        return TAG_FILTER.isEnabled() ? begin(new TagFilterEvent()) : null;
+    }
+
+    @Override
+    public void endTagFilter(Object event, int tags, boolean includeUntagged, int recipes, int results)
+    {
+        if (event != null)
+        {
+            TagFilterEvent e = (TagFilterEvent)event;
+            e.end();
+            e.tags = tags;
+            e.includeUntagged = includeUntagged;
+            e.recipes = recipes;
+            e.results = results;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginRender()
+    {
+        return RENDER.isEnabled() ? begin(new RenderEvent()) : null;
+    }
+
+    @Override
+    public void endRender(Object event, int recipeId, int servings, boolean cached)
+    {
+        if (event != null)
+        {
+            RenderEvent e = (RenderEvent)event;
+            e.end();
+            e.recipeId = recipeId;
+            e.servings = servings;
+            e.cached = cached;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginMutation()
+    {
+        return MUTATION.isEnabled() ? begin(new MutationEvent()) : null;
+    }
+
+    @Override
+    public void endMutation(Object event, String kind, int recipeId, int size)
+    {
+        if (event != null)
+        {
+            MutationEvent e = (MutationEvent)event;
+            e.end();
+            e.kind = kind;
+            e.recipeId = recipeId;
+            e.size = size;
+            e.commit();
+        }
+    }
+}
@@ -0,0 +1,529 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * ColumnarRecipeStorage.java
+ *
+ * Compact recipe storage for very large collections.  Rather than keeping a
+ * Recipe object (with its three lists and a String per line) for every
+ * recipe, all recipes are packed into one shared arena of UTF-8 bytes, and
+ * the store only keeps a few ints per recipe:
+ * * the arena page and offset of the recipe's record
+ * * the hash of its title (for the title index)
+ *
+ * A record is laid out as:
+ *     tag count, tag ids..., title, description, servings,
+ *     ingredient count, ingredients..., step count, steps...
+ * where counts and ids are variable-length ints, and strings are a byte
+ * length followed by that many UTF-8 bytes.  Tags are the recipe's sorted
+ * tag dictionary ids, each stored as the difference from the one before.
+ *
+ * Arena pages are heap ByteBuffers; subclasses can keep them elsewhere by
+ * overriding newPage().
+ *
+ * Recipes are handed out as small frozen views which decode fields from the
+ * arena when they are asked for them.  Records are never overwritten,
+ * so a view always shows the version of the recipe it was made for.  The
+ * downside is that space used by replaced or removed recipes isn't reused
+ * until the collection is next loaded.
+ *
+ * Select this storage with -Dsat.storage=columnar
+ */
+public class ColumnarRecipeStorage implements RecipeStorage
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Size of each arena page.  Records never span pages; a record bigger
+    // than this gets a page to itself.
+    protected static final int PAGE_SIZE = 1 << 20;
+
+    // Title index table markers
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+
+    // Arena pages, and how much of the last page is used
+    private final ArrayList<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+    private int pageFill = PAGE_SIZE;
+
+    // Page and offset of each recipe's record, indexed by ID (page is -1
+    // where there is no recipe)
+    private int[] recordPage = new int[0];
+    private int[] recordOffset = new int[0];
+
+    // Hash of each recipe's title, indexed by ID
+    private int[] titleHashes = new int[0];
+
+    // Open-addressed table of recipe IDs, placed by title hash, with the
+    // number of slots used (including deleted ones) and of IDs in it
+    private int[] titleTable = newTable(16);
+    private int titleSlotsUsed = 0;
+    private int titleCount = 0;
+
+    // Buffer records are encoded into before being copied to the arena
+    private byte[] scratch = new byte[256];
+    private int scratchSize = 0;
+
+    @Override
+    public Recipe put(Recipe recipe)
+    {
+        int id = recipe.getId();
+        ensureIdCapacity(id);
+
+        // Encode the record and copy it into the arena
+        encode(recipe);
+        if (pageFill + scratchSize > PAGE_SIZE)
+        {
+            pages.add(newPage(Math.max(PAGE_SIZE, scratchSize)));
+            pageFill = 0;
+        }
+        ByteBuffer page = pages.get(pages.size() - 1);
+        ByteBuffer target = page.duplicate();
+        target.position(pageFill);
+        target.put(scratch, 0, scratchSize);
+
+        // Re-index the title
+        if (recordPage[id] >= 0)
+        {
+            removeTitle(id);
+        }
+        recordPage[id] = pages.size() - 1;
+        recordOffset[id] = pageFill;
+        pageFill += scratchSize;
+        addTitle(id, recipe.getTitle().hashCode());
+
+        return new View(id, page, recordOffset[id]);
+    }
+
+    @Override
+    public void remove(int id)
+    {
+        if (get(id) != null)
+        {
+            removeTitle(id);
+            recordPage[id] = -1;
+        }
+    }
+
+    @Override
+    public Recipe get(int id)
+    {
+        if (id < 0 || id >= recordPage.length || recordPage[id] < 0)
+        {
+            return null;
+        }
+        return new View(id, pages.get(recordPage[id]), recordOffset[id]);
+    }
+
+    @Override
+    public int findTitle(String title)
+    {
+        int hash = title.hashCode();
+        int mask = titleTable.length - 1;
+        for (int slot = mix(hash) & mask; titleTable[slot] != EMPTY; slot = (slot + 1) & mask)
+        {
+            int id = titleTable[slot];
+            if (id >= 0 && titleHashes[id] == hash && get(id).getTitle().equals(title))
+            {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Allocate a new arena page
+     *
+     * @param size  Size of the page in bytes
+     *
+     * @return the new page
+     */
+    protected ByteBuffer newPage(int size)
+    {
+        return ByteBuffer.allocate(size);
+    }
+
+    // @return number of bytes of arena allocated
+    public long getArenaSize()
+    {
+        long total = 0;
+        for (ByteBuffer page : pages)
+        {
+            total += page.capacity();
+        }
+        return total;
+    }
+
+    // Grow the per-ID arrays to fit an ID
+    private void ensureIdCapacity(int id)
+    {
+        if (id < recordPage.length)
+        {
+            return;
+        }
+        int oldLength = recordPage.length;
+        int newLength = Math.max(id + 1, Math.max(16, oldLength * 2));
+        recordPage = Arrays.copyOf(recordPage, newLength);
+        recordOffset = Arrays.copyOf(recordOffset, newLength);
+        titleHashes = Arrays.copyOf(titleHashes, newLength);
+        Arrays.fill(recordPage, oldLength, newLength, -1);
+    }
+
+    // Title index
+
+    // @return a new, empty title table
+    private static int[] newTable(int capacity)
+    {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    // Spread hash bits so that similar titles don't cluster
+    private static int mix(int hash)
+    {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    // Add a recipe to the title table
+    private void addTitle(int id, int hash)
+    {
+        // Keep the table at most half full (counting deleted slots).  When
+        // most used slots are deleted ones (after lots of renaming and
+        // removing), rehash at the same size to clear them, rather than
+        // growing the table for good.
+        if ((titleSlotsUsed + 1) * 2 > titleTable.length)
+        {
+            int[] old = titleTable;
+            titleTable = newTable((titleCount + 1) * 4 > old.length ? old.length * 2 : old.length);
+            titleSlotsUsed = 0;
+            for (int oldId : old)
+            {
+                if (oldId >= 0)
+                {
+                    insertTitle(oldId, titleHashes[oldId]);
+                }
+            }
+        }
+
+        titleHashes[id] = hash;
+        insertTitle(id, hash);
+        ++titleCount;
+    }
+
+    // Place an ID in the first free slot for its hash
+    private void insertTitle(int id, int hash)
+    {
+        int mask = titleTable.length - 1;
+        int slot = mix(hash) & mask;
+        while (titleTable[slot] >= 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        if (titleTable[slot] == EMPTY)
+        {
+            ++titleSlotsUsed;
+        }
+        titleTable[slot] = id;
+    }
+
+    // Take a recipe out of the title table
+    private void removeTitle(int id)
+    {
+        int mask = titleTable.length - 1;
+        for (int slot = mix(titleHashes[id]) & mask; titleTable[slot] != EMPTY; slot = (slot + 1) & mask)
+        {
+            if (titleTable[slot] == id)
+            {
+                titleTable[slot] = DELETED;
+                --titleCount;
+                return;
+            }
+        }
+    }
+
+    // Encoding
+
+    // Encode a recipe's record into the scratch buffer
+    private void encode(Recipe recipe)
+    {
+        scratchSize = 0;
+
+        int[] tagIds = recipe.getTagIds();
+        writeInt(tagIds.length);
+        int previous = 0;
+        for (int id : tagIds)
+        {
+            writeInt(id - previous);
+            previous = id;
+        }
+
+        writeString(recipe.getTitle());
+        writeString(recipe.getDescription());
+        writeInt(recipe.getServings());
+        writeStrings(recipe.getIngredients());
+        writeStrings(recipe.getProcedure());
+    }
+
+    private void writeStrings(List<String> strings)
+    {
+        writeInt(strings.size());
+        for (String s : strings)
+        {
+            writeString(s);
+        }
+    }
+
+    private void writeString(String s)
+    {
+        byte[] bytes = s.getBytes(UTF_8);
+        writeInt(bytes.length);
+        ensureScratch(bytes.length);
+        System.arraycopy(bytes, 0, scratch, scratchSize, bytes.length);
+        scratchSize += bytes.length;
+    }
+
+    // Write a non-negative int, seven bits per byte
+    private void writeInt(int value)
+    {
+        ensureScratch(5);
+        while (value >= 0x80)
+        {
+            scratch[scratchSize++] = (byte)(value | 0x80);
+            value >>>= 7;
+        }
+        scratch[scratchSize++] = (byte)value;
+    }
+
+    private void ensureScratch(int extra)
+    {
+        if (scratchSize + extra > scratch.length)
+        {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchSize + extra));
+        }
+    }
+
+    /*
+     * Reads fields from a record in order
+     */
+    private static class Reader
+    {
+        private final ByteBuffer data;
+        private int pos;
+
+        Reader(ByteBuffer data, int pos)
+        {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        int readInt()
+        {
+            int value = 0;
+            for (int shift = 0; ; shift += 7)
+            {
+                byte b = data.get(pos++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0)
+                {
+                    return value;
+                }
+            }
+        }
+
+        String readString()
+        {
+            int length = readInt();
+            String s;
+            if (data.hasArray())
+            {
+                s = new String(data.array(), data.arrayOffset() + pos, length, UTF_8);
+            }
+            else
+            {
+                // Off-heap page; copy the bytes out first
+                byte[] bytes = new byte[length];
+                ByteBuffer source = data.duplicate();
+                source.position(pos);
+                source.get(bytes);
+                s = new String(bytes, UTF_8);
+            }
+            pos += length;
+            return s;
+        }
+
+        void skipString()
+        {
+            int length = readInt();
+            pos += length;
+        }
+
+        List<String> readStrings()
+        {
+            int count = readInt();
+            ArrayList<String> strings = new ArrayList<String>(count);
+            for (int i = 0; i < count; ++i)
+            {
+                strings.add(readString());
+            }
+            return Collections.unmodifiableList(strings);
+        }
+
+        void skipStrings()
+        {
+            for (int count = readInt(); count > 0; --count)
+            {
+                skipString();
+            }
+        }
+
+        // Skip the tags at the start of the record
+        Reader skipTags()
+        {
+            for (int count = readInt(); count > 0; --count)
+            {
+                readInt();
+            }
+            return this;
+        }
+
+        // Skip to the servings, after the title and description
+        Reader skipToServings()
+        {
+            skipTags();
+            skipString();
+            skipString();
+            return this;
+        }
+    }
+
+    /*
+     * Read-only view of a stored recipe.  Each getter decodes its field from
+     * the arena, so a view costs little more than its header to keep.
+     */
+    private static class View extends Recipe
+    {
+        private final ByteBuffer page;
+        private final int offset;
+
+        View(int id, ByteBuffer page, int offset)
+        {
+            super(id);
+            this.page = page;
+            this.offset = offset;
+        }
+
+        private Reader reader()
+        {
+            return new Reader(page, offset);
+        }
+
+        @Override
+        public String getTitle()
+        {
+            return reader().skipTags().readString();
+        }
+
+        @Override
+        public String getDescription()
+        {
+            Reader r = reader().skipTags();
+            r.skipString();
+            return r.readString();
+        }
+
+        @Override
+        public int getServings()
+        {
+            return reader().skipToServings().readInt();
+        }
+
+        @Override
+        public List<String> getIngredients()
+        {
+            Reader r = reader().skipToServings();
+            r.readInt();
+            return r.readStrings();
+        }
+
+        @Override
+        public List<String> getProcedure()
+        {
+            Reader r = reader().skipToServings();
+            r.readInt();
+            r.skipStrings();
+            return r.readStrings();
+        }
+
+        @Override
+        public int[] getTagIds()
+        {
+            Reader r = reader();
+            int count = r.readInt();
+            if (count == 0)
+            {
+                return TagDictionary.NO_TAGS;
+            }
+            int[] ids = new int[count];
+            int id = 0;
+            for (int i = 0; i < count; ++i)
+            {
+                id += r.readInt();
+                ids[i] = id;
+            }
+            return ids;
+        }
+
+        @Override
+        public boolean hasAnyTag(int[] tagIds)
+        {
+            // Merge straight from the arena, without decoding into an array
+            Reader r = reader();
+            int count = r.readInt();
+            int id = 0, j = 0;
+            for (int i = 0; i < count && j < tagIds.length; ++i)
+            {
+                id += r.readInt();
+                while (j < tagIds.length && tagIds[j] < id)
+                {
+                    ++j;
+                }
+                if (j < tagIds.length && tagIds[j] == id)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int getIngredientsCount()
+        {
+            Reader r = reader().skipToServings();
+            r.readInt();
+            return r.readInt();
+        }
+
+        @Override
+        public int getProcedureSize()
+        {
+            return getProcedure().size();
+        }
+
+        @Override
+        public String getProcedureItem(int idx)
+        {
+            return getProcedure().get(idx);
+        }
+
+        @Override
+        public boolean hasTags()
+        {
+            return page.get(offset) != 0;
+        }
+    }
+}
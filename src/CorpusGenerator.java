@@ -0,0 +1,394 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/*
+ * CorpusGenerator.java
+ *
+ * Generates synthetic recipe collections for scale testing.  The same seed
+ * always gives the same recipes.
+ *
+ * Collections are shaped like real ones: tags, ingredients and words are
+ * drawn from Zipf distributions (a few are very common, most are rare), and
+ * so are the lengths of descriptions, ingredient lists and methods.  The
+ * most common names are real ones ("garlic", "dinner"); the long tail is
+ * made up from syllables.
+ *
+ * Recipes are made one at a time, and written straight out as XML in the
+ * RecipeContainer schema, so a file of any size can be generated in
+ * constant memory.
+ *
+ * Usage: java -cp bin CorpusGenerator <recipes> <file> [seed]
+ */
+public class CorpusGenerator
+{
+    // Sizes of the vocabularies
+    private static final int TAG_COUNT = 300;
+    private static final int INGREDIENT_COUNT = 3000;
+    private static final int WORD_COUNT = 8000;
+
+    // Zipf exponent (about 1 for natural language)
+    private static final double ZIPF_EXPONENT = 1.07;
+
+    // Most common names of each kind, most common first
+    private static final String[] COMMON_TAGS = {
+        "dinner", "easy", "quick", "vegetarian", "lunch", "dessert", "vegan",
+        "baking", "breakfast", "italian", "chicken", "soup", "salad", "indian",
+        "mexican", "gluten free", "spicy", "snack", "party", "kids", "drinks"
+    };
+    private static final String[] COMMON_INGREDIENTS = {
+        "salt", "garlic", "onion", "olive oil", "butter", "egg", "sugar",
+        "plain flour", "milk", "black pepper", "water", "tomato", "lemon juice",
+        "chicken breast", "parmesan", "carrot", "potato", "rice", "honey",
+        "ginger", "soy sauce", "basil", "beef mince", "cream", "mushroom",
+        "spinach", "cheddar", "chilli", "cumin", "coriander", "paprika"
+    };
+    private static final String[] COMMON_WORDS = {
+        "the", "and", "until", "with", "add", "stir", "heat", "a", "to", "of",
+        "minutes", "in", "cook", "over", "mix", "into", "pan", "bowl", "oven",
+        "golden", "well", "season", "serve", "bake", "simmer", "roast",
+        "chicken", "garlic", "quick", "creamy", "spicy", "fresh", "slow"
+    };
+
+    // Dish names for titles
+    private static final String[] DISHES = {
+        "soup", "salad", "curry", "pie", "pasta", "stew", "bake", "stir fry",
+        "tart", "risotto", "cake", "bread", "skewers", "tacos", "noodles"
+    };
+
+    // Syllables made-up names are built from
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ra", "ten", "bor", "sa", "vel", "qui", "nor",
+        "ta", "fen", "li", "cor", "da", "mu", "sel", "par", "zi", "gan"
+    };
+
+    // How ingredient quantities and units are written
+    private static final String[] QUANTITIES = {
+        "1", "2", "1/2", "3", "1 1/2", "4", "1/4", "2-3", "6", "3/4", "250", "100"
+    };
+    private static final String[] UNITS = {
+        "", "tsp", "tbsp", "cup", "cups", "g", "ml", "cloves", "can", "pinch", "kg"
+    };
+    private static final String[] PREPARATIONS = {
+        "chopped", "finely diced", "sliced", "crushed", "grated", "softened"
+    };
+
+    // Vocabularies, most common first.  These are the same for every
+    // generator, so collections made with different seeds share them.
+    private static final String[] TAGS =
+        vocabulary(new Random(1), COMMON_TAGS, TAG_COUNT, 1);
+    private static final String[] INGREDIENTS =
+        vocabulary(new Random(2), COMMON_INGREDIENTS, INGREDIENT_COUNT, 2);
+    private static final String[] WORDS =
+        vocabulary(new Random(3), COMMON_WORDS, WORD_COUNT, 1);
+
+    // Distributions names are drawn from
+    private static final Zipf TAG_RANK = new Zipf(TAG_COUNT, ZIPF_EXPONENT);
+    private static final Zipf INGREDIENT_RANK = new Zipf(INGREDIENT_COUNT, ZIPF_EXPONENT);
+    private static final Zipf WORD_RANK = new Zipf(WORD_COUNT, ZIPF_EXPONENT);
+
+    // Distributions of lengths: each peaks at a typical value, with a long
+    // tail of big recipes
+    private static final Zipf TAGS_PER_RECIPE = new Zipf(8, 1.5);
+    private static final Zipf INGREDIENTS_PER_RECIPE = new Zipf(30, 1.1);
+    private static final Zipf STEPS_PER_RECIPE = new Zipf(30, 1.2);
+    private static final Zipf WORDS_PER_STEP = new Zipf(40, 1.1);
+    private static final Zipf WORDS_PER_DESCRIPTION = new Zipf(60, 1.1);
+
+    private final Random random;
+
+    // Number of the next recipe
+    private long next;
+
+    /*
+     * Initialise a new generator
+     *
+     * @param seed  Random seed
+     */
+    public CorpusGenerator(long seed)
+    {
+        this(seed, 0);
+    }
+
+    /*
+     * Initialise a new generator, numbering recipes from a given start (so
+     * that collections generated in batches don't clash)
+     *
+     * @param seed   Random seed
+     * @param first  Number of the first recipe
+     */
+    public CorpusGenerator(long seed, long first)
+    {
+        random = new Random(seed * 31 + first);
+        next = first;
+    }
+
+    /*
+     * Generate the next recipe
+     *
+     * @return the recipe
+     */
+    public Recipe next()
+    {
+        long number = next++;
+
+        HashSet<String> recipeTags = new HashSet<String>();
+        for (int i = TAGS_PER_RECIPE.sample(random) - 1; i > 0; --i)
+        {
+            recipeTags.add(TAGS[TAG_RANK.sample(random) - 1]);
+        }
+
+        ArrayList<String> recipeIngredients = new ArrayList<String>();
+        for (int i = 2 + INGREDIENTS_PER_RECIPE.sample(random); i > 0; --i)
+        {
+            recipeIngredients.add(ingredientLine());
+        }
+
+        ArrayList<String> procedure = new ArrayList<String>();
+        for (int i = STEPS_PER_RECIPE.sample(random); i > 0; --i)
+        {
+            procedure.add(sentence(4 + WORDS_PER_STEP.sample(random)));
+        }
+
+        Recipe recipe = new Recipe(title(number), sentence(6 + WORDS_PER_DESCRIPTION.sample(random)),
+            recipeIngredients, procedure, recipeTags);
+        recipe.setServings(random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(8));
+        return recipe;
+    }
+
+    /*
+     * Generate a list of recipes
+     *
+     * @param count  Number of recipes
+     *
+     * @return the recipes
+     */
+    public ArrayList<Recipe> generate(int count)
+    {
+        ArrayList<Recipe> recipes = new ArrayList<Recipe>(count);
+        for (int i = 0; i < count; ++i)
+        {
+            recipes.add(next());
+        }
+        return recipes;
+    }
+
+    /*
+     * Write recipes as a recipes file, one recipe at a time
+     *
+     * @param count  Number of recipes
+     * @param out    Stream to write to (not closed)
+     */
+    public void write(long count, OutputStream out) throws XMLStreamException
+    {
+        XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeCharacters("\n");
+        xml.writeStartElement("Recipes");
+        for (long i = 0; i < count; ++i)
+        {
+            writeRecipe(xml, next());
+        }
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    // Write one recipe element
+    private static void writeRecipe(XMLStreamWriter xml, Recipe recipe) throws XMLStreamException
+    {
+        xml.writeCharacters("\n    ");
+        xml.writeStartElement("Recipe");
+        writeElement(xml, "title", recipe.getTitle(), 8);
+        writeElement(xml, "description", recipe.getDescription(), 8);
+        if (recipe.getServings() > 0)
+        {
+            writeElement(xml, "servings", Integer.toString(recipe.getServings()), 8);
+        }
+        writeList(xml, "Ingredients", "Ingredient", recipe.getIngredients());
+        writeList(xml, "Procedure", "Step", recipe.getProcedure());
+        if (recipe.hasTags())
+        {
+            writeList(xml, "Tags", "Tag", recipe.getTags());
+        }
+        xml.writeCharacters("\n    ");
+        xml.writeEndElement();
+    }
+
+    // Write a wrapped list of elements
+    private static void writeList(XMLStreamWriter xml, String wrapper, String name, Iterable<String> values)
+        throws XMLStreamException
+    {
+        xml.writeCharacters("\n        ");
+        xml.writeStartElement(wrapper);
+        for (String value : values)
+        {
+            writeElement(xml, name, value, 12);
+        }
+        xml.writeCharacters("\n        ");
+        xml.writeEndElement();
+    }
+
+    // Write an element containing text, on its own indented line
+    private static void writeElement(XMLStreamWriter xml, String name, String text, int indent)
+        throws XMLStreamException
+    {
+        char[] spaces = new char[indent + 1];
+        Arrays.fill(spaces, ' ');
+        spaces[0] = '\n';
+        xml.writeCharacters(new String(spaces));
+        xml.writeStartElement(name);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
+    }
+
+    // @return a unique title
+    private String title(long number)
+    {
+        String item = INGREDIENTS[INGREDIENT_RANK.sample(random) - 1];
+        String dish = DISHES[random.nextInt(DISHES.length)];
+        String word = WORDS[WORD_RANK.sample(random) - 1];
+        return String.format("%s %s %s #%d", capitalise(word), item, dish, number);
+    }
+
+    // @return an ingredient line, such as "2 cloves garlic, crushed"
+    private String ingredientLine()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(QUANTITIES[(int)(QUANTITIES.length * Math.pow(random.nextDouble(), 2))]).append(' ');
+        String unit = UNITS[random.nextInt(UNITS.length)];
+        if (unit.length() > 0)
+        {
+            sb.append(unit).append(' ');
+        }
+        sb.append(INGREDIENTS[INGREDIENT_RANK.sample(random) - 1]);
+        if (random.nextInt(4) == 0)
+        {
+            sb.append(", ").append(PREPARATIONS[random.nextInt(PREPARATIONS.length)]);
+        }
+        return sb.toString();
+    }
+
+    // @return a sentence of words
+    private String sentence(int length)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; ++i)
+        {
+            String word = WORDS[WORD_RANK.sample(random) - 1];
+            sb.append(i == 0 ? capitalise(word) : " " + word);
+        }
+        return sb.append('.').toString();
+    }
+
+    private static String capitalise(String word)
+    {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /*
+     * Build a vocabulary: the common names, then made-up ones
+     *
+     * @param random  Random source
+     * @param common  Common names, most common first
+     * @param size    Size of the vocabulary
+     * @param words   Number of words in each made-up name
+     *
+     * @return the vocabulary, most common first
+     */
+    private static String[] vocabulary(Random random, String[] common, int size, int words)
+    {
+        String[] names = Arrays.copyOf(common, size);
+        HashSet<String> used = new HashSet<String>(Arrays.asList(common));
+        for (int i = common.length; i < size; ++i)
+        {
+            String name;
+            do
+            {
+                StringBuilder sb = new StringBuilder();
+                for (int w = 0; w < words; ++w)
+                {
+                    if (w > 0)
+                    {
+                        sb.append(' ');
+                    }
+                    for (int s = 2 + random.nextInt(2); s > 0; --s)
+                    {
+                        sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+                    }
+                }
+                name = sb.toString();
+            }
+            while (!used.add(name));
+            names[i] = name;
+        }
+        return names;
+    }
+
+    /*
+     * Zipf distribution over ranks 1 to n, sampled by binary search of the
+     * cumulative probabilities
+     */
+    private static class Zipf
+    {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent)
+        {
+            cumulative = new double[n];
+            double total = 0;
+            for (int rank = 1; rank <= n; ++rank)
+            {
+                total += 1 / Math.pow(rank, exponent);
+                cumulative[rank - 1] = total;
+            }
+            for (int i = 0; i < n; ++i)
+            {
+                cumulative[i] /= total;
+            }
+        }
+
+        // @return a rank, from 1 to n
+        int sample(Random random)
+        {
+            int i = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length, (i >= 0 ? i : -i - 1) + 1);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, XMLStreamException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: java -cp bin CorpusGenerator <recipes> <file> [seed]");
+            System.exit(1);
+        }
+        long count = Long.parseLong(args[0]);
+        File file = new File(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        long start = System.nanoTime();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try
+        {
+            new CorpusGenerator(seed).write(count, out);
+        }
+        finally
+        {
+            out.close();
+        }
+        System.out.printf("Wrote %,d recipes (%,d bytes) to %s in %.1fs\n",
+            count, file.length(), file, (System.nanoTime() - start) / 1e9);
+    }
+}
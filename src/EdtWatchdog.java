@@ -0,0 +1,442 @@
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InvocationEvent;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+
+/*
+ * EdtWatchdog.java
+ *
+ * Finds out what makes the user interface freeze.  When enabled (with
+ * -Dsat.edtWatchdog=<milliseconds>), it replaces the system event queue with
+ * one which times the dispatch of every event on the event dispatch thread.
+ *
+ * While an event is taking longer than the threshold, a sampler thread takes
+ * stack traces of the event dispatch thread.  Once the event finishes, a
+ * condensed report is logged to stderr: the event, how long it took, the
+ * listener it was being handled by (the first frame in our own code), and
+ * the most common frames seen in the samples.
+ *
+ * Every dispatch is also counted in a histogram of dispatch times, which
+ * along with the slowest listeners can be viewed while the program runs
+ * through showReport().
+ */
+public class EdtWatchdog extends EventQueue
+{
+    // Histogram buckets: dispatch times under 1ms, under 2ms, under 4ms, ...
+    // with everything from the last bound upwards in the final bucket
+    private static final int BUCKETS = 13;
+
+    // Most stack samples kept for one slow event
+    private static final int MAX_SAMPLES = 64;
+
+    // Number of frames shown per slow event report
+    private static final int REPORT_FRAMES = 8;
+
+    // Installed watchdog (null if not enabled)
+    private static EdtWatchdog instance = null;
+
+    // Dispatch time above which an event is reported, and how often the
+    // sampler checks for one
+    private final long thresholdNanos;
+    private final long sampleIntervalMillis;
+
+    // Number of dispatches in each histogram bucket
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    // When dispatch of the current event started (0 when idle), and the
+    // thread dispatching it
+    private volatile long currentStart = 0;
+    private volatile Thread dispatchThread = null;
+
+    // Whether the current event ran a nested event loop (e.g. it showed a
+    // modal dialog).  Such an event spends most of its time waiting for the
+    // user, so it isn't timed; the events dispatched inside it are.
+    private boolean nestedLoop = false;
+
+    // Stack samples taken of the current event (guarded by itself)
+    private final ArrayList<StackTraceElement[]> samples = new ArrayList<StackTraceElement[]>();
+
+    // Slow events seen per listener: listener -> { count, total nanos, max nanos }
+    private final HashMap<String, long[]> slowListeners = new HashMap<String, long[]>();
+
+    /*
+     * Install the watchdog if it was asked for with -Dsat.edtWatchdog
+     */
+    public static synchronized void installIfEnabled()
+    {
+        Integer thresholdMillis = Integer.getInteger("sat.edtWatchdog");
+        if (thresholdMillis == null || instance != null)
+        {
+            return;
+        }
+
+        instance = new EdtWatchdog(thresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(instance);
+        instance.startSampler();
+        System.err.printf("EDT watchdog: reporting events over %,dms\n", thresholdMillis);
+    }
+
+    // @return the installed watchdog, or null if it isn't enabled
+    public static synchronized EdtWatchdog getInstance()
+    {
+        return instance;
+    }
+
+    private EdtWatchdog(int thresholdMillis)
+    {
+        thresholdNanos = Math.max(1, thresholdMillis) * 1000000L;
+        sampleIntervalMillis = Math.max(1, thresholdMillis / 4);
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event)
+    {
+        // Dispatch is nested when an event runs an event loop of its own.
+        // The outer event stops being timed, and its samples so far are
+        // dropped, as they are no longer about a stall.
+        boolean nested = currentStart != 0 || nestedLoop;
+        if (nested)
+        {
+            clearSamples();
+        }
+
+        dispatchThread = Thread.currentThread();
+        nestedLoop = false;
+        long start = System.nanoTime();
+        currentStart = start;
+        try
+        {
+            super.dispatchEvent(event);
+        }
+        finally
+        {
+            long elapsed = System.nanoTime() - start;
+            currentStart = 0;
+            ArrayList<StackTraceElement[]> taken = clearSamples();
+            if (!nestedLoop)
+            {
+                histogram.incrementAndGet(bucketOf(elapsed));
+                if (elapsed >= thresholdNanos)
+                {
+                    report(event, elapsed, taken);
+                }
+            }
+
+            // Tell the outer event (if any) that it ran a nested loop
+            nestedLoop = nested;
+        }
+    }
+
+    // @return the samples taken so far, which are then forgotten
+    private ArrayList<StackTraceElement[]> clearSamples()
+    {
+        synchronized (samples)
+        {
+            ArrayList<StackTraceElement[]> taken = new ArrayList<StackTraceElement[]>(samples);
+            samples.clear();
+            return taken;
+        }
+    }
+
+    // Start the thread that samples the stack of slow events
+    private void startSampler()
+    {
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                while (true)
+                {
+                    try
+                    {
+                        Thread.sleep(sampleIntervalMillis);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    sample();
+                }
+            }
+        }, "EDT watchdog sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    // Take a stack sample if the current event has run over the threshold
+    private void sample()
+    {
+        long start = currentStart;
+        Thread thread = dispatchThread;
+        if (start == 0 || thread == null || System.nanoTime() - start < thresholdNanos)
+        {
+            return;
+        }
+
+        StackTraceElement[] stack = thread.getStackTrace();
+        synchronized (samples)
+        {
+            // Only keep the sample if the same event is still running
+            if (currentStart == start && samples.size() < MAX_SAMPLES)
+            {
+                samples.add(stack);
+            }
+        }
+    }
+
+    /*
+     * Log a condensed report of a slow event
+     *
+     * @param event    The event
+     * @param elapsed  Nanoseconds it took to dispatch
+     * @param stacks   Stack samples taken while it ran
+     */
+    private void report(AWTEvent event, long elapsed, ArrayList<StackTraceElement[]> stacks)
+    {
+        String listener = findListener(event, stacks);
+        synchronized (slowListeners)
+        {
+            long[] stats = slowListeners.get(listener);
+            if (stats == null)
+            {
+                stats = new long[3];
+                slowListeners.put(listener, stats);
+            }
+            ++stats[0];
+            stats[1] += elapsed;
+            stats[2] = Math.max(stats[2], elapsed);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("EDT watchdog: %s took %,dms in %s (%d samples)\n",
+            describe(event), elapsed / 1000000, listener, stacks.size()));
+
+        // Most common frames across the samples, ignoring the event loop
+        // frames every sample shares
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (StackTraceElement[] stack : stacks)
+        {
+            for (StackTraceElement frame : stack)
+            {
+                if (isDispatchMachinery(frame))
+                {
+                    continue;
+                }
+                String key = frame.toString();
+                Integer count = counts.get(key);
+                counts.put(key, count == null ? 1 : count + 1);
+            }
+        }
+        ArrayList<Map.Entry<String, Integer>> frames = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+        Collections.sort(frames, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b)
+            {
+                return b.getValue() - a.getValue();
+            }
+        });
+        for (int i = 0; i < frames.size() && i < REPORT_FRAMES; ++i)
+        {
+            sb.append(String.format("    %3d%%  %s\n",
+                100 * frames.get(i).getValue() / stacks.size(), frames.get(i).getKey()));
+        }
+        System.err.print(sb);
+    }
+
+    // @return a short description of an event
+    private static String describe(AWTEvent event)
+    {
+        String source = event.getSource() == null ? "?" : event.getSource().getClass().getSimpleName();
+        return String.format("%s (id %d) on %s", event.getClass().getSimpleName(), event.getID(), source);
+    }
+
+    /*
+     * Work out which listener handled an event: the first frame of our own
+     * code in the samples (nearest the event loop), or failing that, the
+     * runnable or action listener the event is for
+     *
+     * @param event   The event
+     * @param stacks  Stack samples taken while it ran
+     *
+     * @return the listener's class (and method, when known from a sample)
+     */
+    private static String findListener(AWTEvent event, ArrayList<StackTraceElement[]> stacks)
+    {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        String best = null;
+        for (StackTraceElement[] stack : stacks)
+        {
+            // Frames run from the top of the stack down to the event loop,
+            // so search from the bottom up
+            for (int i = stack.length - 1; i >= 0; --i)
+            {
+                if (isPlatformClass(stack[i].getClassName()))
+                {
+                    continue;
+                }
+                String key = stack[i].getClassName() + "." + stack[i].getMethodName();
+                Integer count = counts.get(key);
+                counts.put(key, count == null ? 1 : count + 1);
+                if (best == null || counts.get(key) > counts.get(best))
+                {
+                    best = key;
+                }
+                break;
+            }
+        }
+        if (best != null)
+        {
+            return best;
+        }
+
+        // No samples from our own code; go by what the event carries
+        if (event instanceof InvocationEvent)
+        {
+            // toString() names the runnable
+            return event.paramString();
+        }
+        if (event.getSource() instanceof AbstractButton)
+        {
+            ActionListener[] listeners = ((AbstractButton)event.getSource()).getActionListeners();
+            if (listeners.length > 0)
+            {
+                return listeners[0].getClass().getName();
+            }
+        }
+        return event.getSource() == null ? "unknown" : event.getSource().getClass().getName();
+    }
+
+    // @return whether a class belongs to the Java platform rather than us
+    private static boolean isPlatformClass(String name)
+    {
+        return name.startsWith("java.") || name.startsWith("javax.") ||
+            name.startsWith("sun.") || name.startsWith("jdk.") ||
+            name.startsWith("com.sun.") || name.equals(EdtWatchdog.class.getName());
+    }
+
+    // @return whether a frame is part of the event loop itself
+    private static boolean isDispatchMachinery(StackTraceElement frame)
+    {
+        String name = frame.getClassName();
+        return name.startsWith("java.awt.EventQueue") || name.startsWith("java.awt.EventDispatchThread") ||
+            name.equals("java.awt.event.InvocationEvent") || name.startsWith("java.security.") ||
+            name.equals(EdtWatchdog.class.getName());
+    }
+
+    // @return the histogram bucket for a dispatch time
+    private static int bucketOf(long nanos)
+    {
+        long millis = nanos / 1000000;
+        int bucket = 0;
+        while (millis > 0 && bucket < BUCKETS - 1)
+        {
+            millis >>= 1;
+            ++bucket;
+        }
+        return bucket;
+    }
+
+    // @return the histogram of dispatch times and the slowest listeners
+    public String getReport()
+    {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+        {
+            total += histogram.get(i);
+        }
+
+        sb.append(String.format("Event dispatch times (%,d events):\n", total));
+        for (int i = 0; i < BUCKETS; ++i)
+        {
+            long count = histogram.get(i);
+            String range = i == 0 ? "< 1ms" :
+                i == BUCKETS - 1 ? String.format(">= %,dms", 1L << (i - 1)) :
+                String.format("%,d-%,dms", 1L << (i - 1), 1L << i);
+            sb.append(String.format("  %-14s %,10d  %5.1f%%\n", range, count,
+                total == 0 ? 0.0 : 100.0 * count / total));
+        }
+
+        sb.append("\nSlow events by listener (count, total, worst):\n");
+        ArrayList<Map.Entry<String, long[]>> listeners;
+        synchronized (slowListeners)
+        {
+            listeners = new ArrayList<Map.Entry<String, long[]>>();
+            for (Map.Entry<String, long[]> e : slowListeners.entrySet())
+            {
+                listeners.add(new AbstractMap.SimpleEntry<String, long[]>(e.getKey(), e.getValue().clone()));
+            }
+        }
+        Collections.sort(listeners, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b)
+            {
+                return Long.compare(b.getValue()[1], a.getValue()[1]);
+            }
+        });
+        if (listeners.isEmpty())
+        {
+            sb.append("  (none)\n");
+        }
+        for (Map.Entry<String, long[]> e : listeners)
+        {
+            long[] stats = e.getValue();
+            sb.append(String.format("  %,6d  %,8dms  %,6dms  %s\n",
+                stats[0], stats[1] / 1000000, stats[2] / 1000000, e.getKey()));
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Show the report in a dialog
+     *
+     * @param owner  Window the dialog belongs to
+     */
+    public void showReport(Window owner)
+    {
+        final JDialog dialog = new JDialog(owner, "Event dispatch report", Dialog.ModalityType.MODELESS);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(new EmptyBorder(16, 16, 16, 16));
+        dialog.setContentPane(panel);
+
+        final JTextArea text = new JTextArea(getReport(), 30, 80);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        text.setEditable(false);
+        panel.add(new JScrollPane(text), BorderLayout.CENTER);
+
+        JPanel ctrlsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        panel.add(ctrlsPanel, BorderLayout.SOUTH);
+        JButton btnRefresh = new JButton("Refresh");
+        ctrlsPanel.add(btnRefresh);
+        btnRefresh.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                text.setText(getReport());
+            }
+        });
+        JButton btnClose = new JButton("Close");
+        ctrlsPanel.add(btnClose);
+        btnClose.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                dialog.dispose();
+            }
+        });
+
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setLocationRelativeTo(owner);
+        dialog.setVisible(true);
+    }
+}
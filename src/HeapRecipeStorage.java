@@ -0,0 +1,63 @@
+import java.util.HashMap;
+
+/*
+ * HeapRecipeStorage.java
+ *
+ * Default recipe storage.  Recipes are kept as the objects they were stored
+ * as, in an array indexed by ID, with a hash map from title to ID.
+ */
+public class HeapRecipeStorage implements RecipeStorage
+{
+    // Stored recipes, indexed by ID (null where there is none)
+    private Recipe[] recipesById = new Recipe[16];
+
+    // Recipe IDs by title
+    private final HashMap<String, Integer> idsByTitle = new HashMap<String, Integer>();
+
+    @Override
+    public Recipe put(Recipe recipe)
+    {
+        int id = recipe.getId();
+        if (id >= recipesById.length)
+        {
+            Recipe[] grown = new Recipe[Math.max(id + 1, recipesById.length * 2)];
+            System.arraycopy(recipesById, 0, grown, 0, recipesById.length);
+            recipesById = grown;
+        }
+
+        // Drop the old title if the recipe was renamed
+        Recipe old = recipesById[id];
+        if (old != null && !old.getTitle().equals(recipe.getTitle()))
+        {
+            idsByTitle.remove(old.getTitle());
+        }
+
+        recipesById[id] = recipe;
+        idsByTitle.put(recipe.getTitle(), id);
+        return recipe;
+    }
+
+    @Override
+    public void remove(int id)
+    {
+        Recipe old = get(id);
+        if (old != null)
+        {
+            recipesById[id] = null;
+            idsByTitle.remove(old.getTitle());
+        }
+    }
+
+    @Override
+    public Recipe get(int id)
+    {
+        return id >= 0 && id < recipesById.length ? recipesById[id] : null;
+    }
+
+    @Override
+    public int findTitle(String title)
+    {
+        Integer id = idsByTitle.get(title);
+        return id == null ? -1 : id;
+    }
+}
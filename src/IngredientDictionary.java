@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * IngredientDictionary.java
+ *
+ * Global dictionary giving every ingredient a canonical name and a small
+ * integer id.  The same ingredient is written in many ways ("Garlic",
+ * "garlic cloves", "clove of garlic"), so each way it is written (its
+ * surface form) is canonicalised once and remembered, and every later
+ * lookup of that form is a single map lookup.
+ *
+ * Canonicalising a form:
+ * * drops unit words ("cloves garlic", "garlic cloves") and descriptive
+ *   words that don't change what is bought ("large", "chopped", ...)
+ * * makes the last word singular ("tomatoes" -> "tomato")
+ * * maps known synonyms to one name ("scallion" -> "spring onion")
+ *
+ * Ids are handed out in the order canonical names are first seen, and are
+ * never reused within a run.
+ */
+public class IngredientDictionary
+{
+    // Shared empty id list
+    public static final int[] NO_INGREDIENTS = new int[0];
+
+    // Words which describe an ingredient without changing what it is
+    private static final String[] DESCRIPTIVE_WORDS = {
+        "large", "medium", "small", "fresh", "freshly", "extra", "finely",
+        "roughly", "thinly", "chopped", "diced", "minced", "sliced", "grated",
+        "crushed", "peeled", "ripe", "whole", "heaped", "level"
+    };
+
+    // Built-in synonyms: form -> canonical name (both already canonical
+    // in every other way)
+    private static final String[][] SYNONYMS = {
+        { "scallion", "spring onion" },
+        { "green onion", "spring onion" },
+        { "cilantro", "coriander" },
+        { "coriander leaf", "coriander" },
+        { "cilantro leaf", "coriander" },
+        { "capsicum", "bell pepper" },
+        { "courgette", "zucchini" },
+        { "aubergine", "eggplant" },
+        { "garbanzo bean", "chickpea" },
+        { "plain flour", "all-purpose flour" },
+        { "all purpose flour", "all-purpose flour" },
+        { "icing sugar", "powdered sugar" },
+        { "confectioners sugar", "powdered sugar" },
+        { "caster sugar", "superfine sugar" },
+        { "bicarbonate of soda", "baking soda" },
+        { "bicarb soda", "baking soda" },
+        { "double cream", "heavy cream" },
+        { "single cream", "light cream" },
+        { "prawn", "shrimp" },
+        { "rocket", "arugula" },
+        { "mince", "ground beef" },
+        { "beef mince", "ground beef" }
+    };
+
+    // Words kept as they are when making the last word singular
+    private static final String[] SINGULAR_EXCEPTIONS = {
+        "molasses", "hummus", "couscous", "asparagus", "swiss", "grits",
+        "oats", "lemongrass", "harissa", "quinoa"
+    };
+
+    // Plurals which don't follow the usual rules
+    private static final String[][] IRREGULAR_PLURALS = {
+        { "leaves", "leaf" },
+        { "halves", "half" },
+        { "loaves", "loaf" },
+        { "knives", "knife" }
+    };
+
+    // Canonical names, indexed by id
+    private static final ArrayList<String> names = new ArrayList<String>();
+
+    // Ids by canonical name
+    private static final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+
+    // Ids by every surface form seen so far (a cache of canonicalise())
+    private static final HashMap<String, Integer> forms = new HashMap<String, Integer>();
+
+    // Synonyms, including any added at run time
+    private static final HashMap<String, String> synonyms = new HashMap<String, String>();
+    static
+    {
+        for (String[] synonym : SYNONYMS)
+        {
+            synonyms.put(synonym[0], synonym[1]);
+        }
+    }
+
+    /*
+     * Get the id of an ingredient, giving its canonical name an id if it's
+     * new
+     *
+     * @param form  Ingredient as written (e.g. a parsed line's item)
+     *
+     * @return the id, or -1 if the form names no ingredient (e.g. it is
+     *         empty)
+     */
+    public static synchronized int idOf(String form)
+    {
+        Integer id = forms.get(form);
+        if (id == null)
+        {
+            String name = canonicalise(form);
+            if (name.length() == 0)
+            {
+                return -1;
+            }
+            id = ids.get(name);
+            if (id == null)
+            {
+                id = names.size();
+                name = StringPool.intern(name);
+                names.add(name);
+                ids.put(name, id);
+            }
+            forms.put(StringPool.intern(form), id);
+        }
+        return id;
+    }
+
+    /*
+     * Look up the id of an ingredient without adding it
+     *
+     * @param form  Ingredient as written (any case)
+     *
+     * @return the id, or -1 if no known ingredient has that name
+     */
+    public static synchronized int find(String form)
+    {
+        Integer id = forms.get(form);
+        if (id != null)
+        {
+            return id;
+        }
+        id = ids.get(canonicalise(form));
+        return id == null ? -1 : id;
+    }
+
+    // @return the canonical name of the ingredient with an id
+    public static synchronized String nameOf(int id)
+    {
+        return names.get(id);
+    }
+
+    // @return number of ingredients that have been given ids
+    public static synchronized int size()
+    {
+        return names.size();
+    }
+
+    /*
+     * Add a synonym.  Forms already seen keep the id they were given, so
+     * synonyms should be added before recipes are loaded.
+     *
+     * @param form       Form to treat as a synonym
+     * @param canonical  Name it means
+     */
+    public static synchronized void addSynonym(String form, String canonical)
+    {
+        synonyms.put(canonicalWords(form), canonicalWords(canonical));
+    }
+
+    /*
+     * Look up the ingredient of each of a recipe's parsed ingredient lines,
+     * giving new ingredients ids
+     *
+     * @param ingredients  Parsed lines
+     *
+     * @return the id of each line, in order (-1 for lines naming no
+     *         ingredient)
+     */
+    public static int[] toLineIds(ParsedIngredient[] ingredients)
+    {
+        if (ingredients.length == 0)
+        {
+            return NO_INGREDIENTS;
+        }
+
+        int[] result = new int[ingredients.length];
+        for (int i = 0; i < ingredients.length; ++i)
+        {
+            result[i] = idOf(ingredients[i].getItem());
+        }
+        return result;
+    }
+
+    /*
+     * Work out the canonical name of an ingredient
+     *
+     * @param form  Ingredient as written
+     *
+     * @return the canonical name (empty if there is nothing left of it)
+     */
+    public static synchronized String canonicalise(String form)
+    {
+        String name = canonicalWords(form);
+        String synonym = synonyms.get(name);
+        return synonym != null ? synonym : name;
+    }
+
+    // @return a form with case, unit words, descriptive words and plurals
+    //         taken out
+    private static String canonicalWords(String form)
+    {
+        String[] words = form.toLowerCase().trim().split("[\\s,]+");
+        ArrayList<String> kept = new ArrayList<String>(words.length);
+        for (int i = 0; i < words.length; ++i)
+        {
+            String word = words[i];
+            if (word.length() == 0 || isDescriptive(word))
+            {
+                continue;
+            }
+
+            // A unit word at the start ("clove of garlic", "cloves garlic")
+            // or end ("garlic cloves") isn't part of the ingredient
+            if ((kept.isEmpty() || i == words.length - 1) && words.length > 1 &&
+                IngredientUnit.lookup(word) != null)
+            {
+                if (kept.isEmpty() && i + 1 < words.length && words[i + 1].equals("of"))
+                {
+                    ++i;
+                }
+                continue;
+            }
+            kept.add(word);
+        }
+
+        if (kept.isEmpty())
+        {
+            return "";
+        }
+        kept.set(kept.size() - 1, singular(kept.get(kept.size() - 1)));
+
+        StringBuilder sb = new StringBuilder();
+        for (String word : kept)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(' ');
+            }
+            sb.append(word);
+        }
+        return sb.toString();
+    }
+
+    // @return whether a word only describes an ingredient
+    private static boolean isDescriptive(String word)
+    {
+        for (String descriptive : DESCRIPTIVE_WORDS)
+        {
+            if (descriptive.equals(word))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // @return the singular of an English noun (or the word itself if it
+    //         doesn't look plural)
+    private static String singular(String word)
+    {
+        for (String exception : SINGULAR_EXCEPTIONS)
+        {
+            if (exception.equals(word))
+            {
+                return word;
+            }
+        }
+
+        int n = word.length();
+        if (n <= 3)
+        {
+            return word;
+        }
+        for (String[] irregular : IRREGULAR_PLURALS)
+        {
+            if (irregular[0].equals(word))
+            {
+                return irregular[1];
+            }
+        }
+        if (word.endsWith("ies"))
+        {
+            // berries -> berry
+            return word.substring(0, n - 3) + "y";
+        }
+        if (word.endsWith("oes") || word.endsWith("ches") || word.endsWith("shes") ||
+            word.endsWith("sses") || word.endsWith("xes"))
+        {
+            // tomatoes -> tomato, peaches -> peach, boxes -> box
+            return word.substring(0, n - 2);
+        }
+        if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is"))
+        {
+            return word.substring(0, n - 1);
+        }
+        return word;
+    }
+}
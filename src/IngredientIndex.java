@@ -0,0 +1,81 @@
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * IngredientIndex.java
+ *
+ * Index of the ingredient named by each line of each recipe, as
+ * IngredientDictionary ids.  Working out a line's id means canonicalising
+ * its item, so shopping lists take the ids from here instead of working
+ * them out again every time a recipe is added to a list.
+ *
+ * Parsing every recipe's ingredient lines is too much work to add to every
+ * start-up, so a recipe's ids are only worked out the first time they are
+ * asked for.  They are kept until the recipe is edited or removed, as the
+ * index is updated along with the recipe store.
+ */
+public class IngredientIndex implements RecipeStoreListener
+{
+    // Store the index is built from
+    private final RecipeStore store;
+
+    // Ingredient id of each ingredient line of each recipe, indexed by
+    // recipe ID (null where the ids haven't been worked out)
+    private int[][] idsByRecipe = new int[0][];
+
+    /*
+     * Initialise a new index
+     *
+     * @param store  Store of the recipes to index
+     */
+    public IngredientIndex(RecipeStore store)
+    {
+        this.store = store;
+    }
+
+    /*
+     * Get the ingredients of a recipe's lines
+     *
+     * @param recipe  Recipe (ids of versions that are no longer stored are
+     *                worked out, but not kept)
+     *
+     * @return the ingredient id of each of its parsed ingredient lines, in
+     *         order (-1 for lines naming no ingredient).  The array must
+     *         not be modified.
+     */
+    public int[] getLineIds(Recipe recipe)
+    {
+        int recipeId = recipe.getId();
+        if (store.get(recipeId) != recipe)
+        {
+            return IngredientDictionary.toLineIds(recipe.getParsedIngredients());
+        }
+
+        if (recipeId >= idsByRecipe.length)
+        {
+            idsByRecipe = Arrays.copyOf(idsByRecipe, Math.max(recipeId + 1, idsByRecipe.length * 2));
+        }
+        int[] ids = idsByRecipe[recipeId];
+        if (ids == null)
+        {
+            ids = IngredientDictionary.toLineIds(recipe.getParsedIngredients());
+            idsByRecipe[recipeId] = ids;
+        }
+        return ids;
+    }
+
+    @Override
+    public void recipesChanged(List<RecipeStoreEvent> events)
+    {
+        // Forget the ids of old versions; new ones are worked out when
+        // they're wanted
+        for (RecipeStoreEvent e : events)
+        {
+            Recipe old = e.getOldRecipe();
+            if (old != null && old.getId() < idsByRecipe.length)
+            {
+                idsByRecipe[old.getId()] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * IngredientParser.java
+ *
+ * Breaks ingredient lines down into quantity, unit and item.  Understands
+ * quantities written as whole numbers, decimals ("1.5"), fractions ("1/2"),
+ * mixed numbers ("1 1/2"), vulgar fraction characters and ranges ("2-3",
+ * "2 to 3").  A unit may follow the quantity, either as its own word or
+ * straight after the number ("250g").
+ *
+ * Parsed lines are cached by their text, so a line is only parsed again
+ * once it has been changed (or has fallen out of the cache).
+ */
+public class IngredientParser
+{
+    // Number of parsed lines to keep in the cache
+    private static final int CACHE_SIZE = 8192;
+
+    // Recently parsed lines, least recently used first
+    private static final LinkedHashMap<String, ParsedIngredient> cache =
+        new LinkedHashMap<String, ParsedIngredient>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParsedIngredient> eldest)
+            {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    // Fraction characters and their values
+    private static final String FRACTION_CHARS = "\u00bd\u2153\u2154\u00bc\u00be\u2155\u2156\u2157\u2158\u2159\u215a\u215b\u215c\u215d\u215e";
+    private static final double[] FRACTION_VALUES = {
+        1.0 / 2, 1.0 / 3, 2.0 / 3, 1.0 / 4, 3.0 / 4, 1.0 / 5, 2.0 / 5, 3.0 / 5, 4.0 / 5,
+        1.0 / 6, 5.0 / 6, 1.0 / 8, 3.0 / 8, 5.0 / 8, 7.0 / 8
+    };
+
+    /*
+     * Parse an ingredient line
+     *
+     * @param line  The line as written
+     *
+     * @return the parsed line
+     */
+    public static ParsedIngredient parse(String line)
+    {
+        synchronized (cache)
+        {
+            ParsedIngredient parsed = cache.get(line);
+            if (parsed != null)
+            {
+                return parsed;
+            }
+        }
+
+        ParsedIngredient parsed = new IngredientParser(line).parse();
+        synchronized (cache)
+        {
+            cache.put(line, parsed);
+        }
+        return parsed;
+    }
+
+    // Line being parsed, and where we are in it
+    private final String line;
+    private int pos = 0;
+
+    // Value of the last number read
+    private double number;
+
+    private IngredientParser(String line)
+    {
+        this.line = line;
+    }
+
+    // Parse the whole line
+    private ParsedIngredient parse()
+    {
+        skipSpaces();
+
+        // Quantity, possibly a range
+        double quantity = Double.NaN, quantityMax = Double.NaN;
+        int quantityStart = pos, quantityEnd = pos;
+        if (readNumber())
+        {
+            quantity = number;
+            quantityMax = number;
+            quantityEnd = pos;
+
+            int save = pos;
+            skipSpaces();
+            if (skipRangeSeparator())
+            {
+                skipSpaces();
+                if (readNumber() && number > quantity)
+                {
+                    quantityMax = number;
+                    quantityEnd = pos;
+                }
+                else
+                {
+                    pos = save;
+                }
+            }
+            else
+            {
+                pos = save;
+            }
+        }
+
+        // Unit, if the next word is one
+        IngredientUnit unit = null;
+        if (quantityEnd > quantityStart)
+        {
+            int save = pos;
+            skipSpaces();
+            int wordStart = pos;
+            while (pos < line.length() && (Character.isLetter(line.charAt(pos)) || line.charAt(pos) == '.'))
+            {
+                ++pos;
+            }
+            unit = pos > wordStart ? IngredientUnit.lookup(line.substring(wordStart, pos)) : null;
+            if (unit == null)
+            {
+                pos = save;
+            }
+        }
+
+        return new ParsedIngredient(line, quantity, quantityMax,
+            quantityStart, quantityEnd, unit, normaliseItem(line.substring(pos)));
+    }
+
+    // Read a number at the current position, if there is one
+    private boolean readNumber()
+    {
+        int start = pos;
+
+        // A lone fraction character
+        double fraction = readFractionChar();
+        if (!Double.isNaN(fraction))
+        {
+            number = fraction;
+            return true;
+        }
+
+        // Whole number or decimal
+        while (pos < line.length() && (Character.isDigit(line.charAt(pos)) || line.charAt(pos) == '.'))
+        {
+            ++pos;
+        }
+        if (pos == start)
+        {
+            return false;
+        }
+        try
+        {
+            number = Double.parseDouble(line.substring(start, pos));
+        }
+        catch (NumberFormatException e)
+        {
+            pos = start;
+            return false;
+        }
+
+        // Fraction straight after ("1/2", or a fraction character)
+        if (pos < line.length() && line.charAt(pos) == '/')
+        {
+            int save = pos++;
+            double numerator = number;
+            if (readDigits() && number != 0)
+            {
+                number = numerator / number;
+                return true;
+            }
+            pos = save;
+            number = numerator;
+            return true;
+        }
+        fraction = readFractionChar();
+        if (!Double.isNaN(fraction))
+        {
+            number += fraction;
+            return true;
+        }
+
+        // Mixed number ("1 1/2", or a fraction character after a space)
+        int save = pos;
+        double whole = number;
+        skipSpaces();
+        fraction = readFractionChar();
+        if (!Double.isNaN(fraction))
+        {
+            number = whole + fraction;
+            return true;
+        }
+        if (readDigits() && pos < line.length() && line.charAt(pos) == '/')
+        {
+            double numerator = number;
+            ++pos;
+            if (readDigits() && number != 0)
+            {
+                number = whole + numerator / number;
+                return true;
+            }
+        }
+        pos = save;
+        number = whole;
+        return true;
+    }
+
+    // Read a run of digits as a whole number
+    private boolean readDigits()
+    {
+        int start = pos;
+        while (pos < line.length() && Character.isDigit(line.charAt(pos)))
+        {
+            ++pos;
+        }
+        if (pos == start || pos - start > 9)
+        {
+            pos = start;
+            return false;
+        }
+        number = Integer.parseInt(line.substring(start, pos));
+        return true;
+    }
+
+    // Read a fraction character, returning its value (or NaN if there isn't
+    // one here)
+    private double readFractionChar()
+    {
+        if (pos < line.length())
+        {
+            int i = FRACTION_CHARS.indexOf(line.charAt(pos));
+            if (i >= 0)
+            {
+                ++pos;
+                return FRACTION_VALUES[i];
+            }
+        }
+        return Double.NaN;
+    }
+
+    // Skip a hyphen, en dash or "to" between the ends of a range
+    private boolean skipRangeSeparator()
+    {
+        if (pos < line.length() && (line.charAt(pos) == '-' || line.charAt(pos) == '\u2013'))
+        {
+            ++pos;
+            return true;
+        }
+        if (line.regionMatches(true, pos, "to ", 0, 3))
+        {
+            pos += 3;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces()
+    {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos)))
+        {
+            ++pos;
+        }
+    }
+
+    /*
+     * Normalise the item part of a line: lowercase it, and drop bracketed
+     * notes, anything after a comma (usually preparation, e.g. ", chopped")
+     * and a leading "of"
+     *
+     * @param text  Item text as written
+     *
+     * @return the normalised item
+     */
+    private static String normaliseItem(String text)
+    {
+        StringBuilder sb = new StringBuilder(text.length());
+        int depth = 0;
+        boolean space = false;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            if (c == '(')
+            {
+                ++depth;
+            }
+            else if (c == ')')
+            {
+                depth = Math.max(0, depth - 1);
+            }
+            else if (depth > 0)
+            {
+                continue;
+            }
+            else if (c == ',')
+            {
+                break;
+            }
+            else if (Character.isWhitespace(c))
+            {
+                space = sb.length() > 0;
+            }
+            else
+            {
+                if (space)
+                {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+
+        String item = sb.toString();
+        if (item.startsWith("of "))
+        {
+            item = item.substring(3);
+        }
+        return StringPool.intern(item);
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.HashMap;
+
+/*
+ * IngredientUnit.java
+ *
+ * Units that ingredient quantities can be given in.  Units of volume and
+ * mass know their size in a base unit (millilitres or grams), so quantities
+ * in compatible units can be converted and added together.  Other units
+ * (such as "clove" or "pinch") can only be combined with themselves.
+ */
+public enum IngredientUnit
+{
+    // Volume (base unit: millilitres)
+    TEASPOON("tsp", Dimension.VOLUME, 4.92892, "tsp", "tsps", "teaspoon", "teaspoons"),
+    TABLESPOON("tbsp", Dimension.VOLUME, 14.7868, "tbsp", "tbsps", "tbs", "tablespoon", "tablespoons"),
+    CUP("cup", Dimension.VOLUME, 236.588, "cup", "cups"),
+    MILLILITRE("ml", Dimension.VOLUME, 1, "ml", "mls", "millilitre", "millilitres", "milliliter", "milliliters"),
+    LITRE("l", Dimension.VOLUME, 1000, "l", "litre", "litres", "liter", "liters"),
+
+    // Mass (base unit: grams)
+    GRAM("g", Dimension.MASS, 1, "g", "gs", "gram", "grams", "gm", "gms"),
+    KILOGRAM("kg", Dimension.MASS, 1000, "kg", "kgs", "kilogram", "kilograms", "kilo", "kilos"),
+    OUNCE("oz", Dimension.MASS, 28.3495, "oz", "ounce", "ounces"),
+    POUND("lb", Dimension.MASS, 453.592, "lb", "lbs", "pound", "pounds"),
+
+    // Units which only combine with themselves
+    PINCH("pinch", Dimension.OTHER, 1, "pinch", "pinches"),
+    CLOVE("clove", Dimension.OTHER, 1, "clove", "cloves"),
+    CAN("can", Dimension.OTHER, 1, "can", "cans", "tin", "tins"),
+    PACKET("packet", Dimension.OTHER, 1, "packet", "packets", "pkt", "pkts", "pack", "packs"),
+    SLICE("slice", Dimension.OTHER, 1, "slice", "slices"),
+    BUNCH("bunch", Dimension.OTHER, 1, "bunch", "bunches");
+
+    // What a unit measures
+    public enum Dimension
+    {
+        VOLUME, MASS, OTHER
+    }
+
+    // Units by each of the ways they can be written
+    private static final HashMap<String, IngredientUnit> bySynonym = new HashMap<String, IngredientUnit>();
+    static
+    {
+        for (IngredientUnit unit : values())
+        {
+            for (String synonym : unit.synonyms)
+            {
+                bySynonym.put(synonym, unit);
+            }
+        }
+    }
+
+    // Short name shown to the user
+    private final String symbol;
+
+    // What the unit measures
+    private final Dimension dimension;
+
+    // Size of the unit in the base unit of its dimension
+    private final double baseSize;
+
+    // Ways the unit can be written (lowercase, without a trailing '.')
+    private final String[] synonyms;
+
+    IngredientUnit(String symbol, Dimension dimension, double baseSize, String... synonyms)
+    {
+        this.symbol = symbol;
+        this.dimension = dimension;
+        this.baseSize = baseSize;
+        this.synonyms = synonyms;
+    }
+
+    /*
+     * Look up a unit by how it was written
+     *
+     * @param word  Word to look up (any case, may end in '.')
+     *
+     * @return the unit, or null if the word isn't a unit
+     */
+    public static IngredientUnit lookup(String word)
+    {
+        word = word.toLowerCase();
+        if (word.endsWith("."))
+        {
+            word = word.substring(0, word.length() - 1);
+        }
+        return bySynonym.get(word);
+    }
+
+    // @return whether quantities in this unit can be converted to another
+    public boolean isCompatible(IngredientUnit other)
+    {
+        return other == this || (dimension != Dimension.OTHER && other.dimension == dimension);
+    }
+
+    // @return a quantity in this unit converted to another compatible unit
+    public double convert(double quantity, IngredientUnit to)
+    {
+        return quantity * baseSize / to.baseSize;
+    }
+
+    /*
+     * Get the name to show for a quantity of this unit.  Units of volume
+     * and mass use their symbol; other units are written out, plural if
+     * there is more than one (e.g. "3 cloves").
+     *
+     * @param quantity  Quantity the name is shown with
+     *
+     * @return the name
+     */
+    public String getSymbol(double quantity)
+    {
+        return dimension == Dimension.OTHER && quantity > 1 ? synonyms[1] : symbol;
+    }
+
+    // Getters
+
+    public String getSymbol()
+    {
+        return symbol;
+    }
+
+    public Dimension getDimension()
+    {
+        return dimension;
+    }
+
+    public double getBaseSize()
+    {
+        return baseSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return symbol;
+    }
+}
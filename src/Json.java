@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Json.java
+ *
+ * Just enough JSON for the HTTP service: parsing request bodies into maps,
+ * lists, strings, numbers (as Double), booleans and nulls, and quoting
+ * strings for responses (which are written with StringBuilders).
+ */
+public class Json
+{
+    // Deepest nesting of objects and arrays accepted (recipes need two
+    // levels), so that a hostile document can't overflow the stack
+    private static final int MAX_DEPTH = 64;
+
+    // Text being parsed, the position reached, and the current nesting
+    private final String text;
+    private int pos = 0;
+    private int depth = 0;
+
+    private Json(String text)
+    {
+        this.text = text;
+    }
+
+    /*
+     * Parse a JSON document
+     *
+     * @param text  JSON text
+     *
+     * @return the value: a Map, List, String, Double, Boolean or null
+     *
+     * @throws IllegalArgumentException if the text isn't valid JSON
+     */
+    public static Object parse(String text)
+    {
+        Json parser = new Json(text);
+        Object value = parser.value();
+        parser.skipSpace();
+        if (parser.pos < text.length())
+        {
+            throw parser.error("Unexpected text after value");
+        }
+        return value;
+    }
+
+    /*
+     * Append a string as a JSON string literal
+     *
+     * @param sb  Builder to append to
+     * @param s   String to quote (null is written as null)
+     *
+     * @return the builder
+     */
+    public static StringBuilder quote(StringBuilder sb, String s)
+    {
+        if (s == null)
+        {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); ++i)
+        {
+            char c = s.charAt(i);
+            switch (c)
+            {
+            case '"':  sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if (c < 0x20)
+                {
+                    sb.append(String.format("\\u%04x", (int)c));
+                }
+                else
+                {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /*
+     * Append a list of strings as a JSON array
+     *
+     * @param sb       Builder to append to
+     * @param strings  Strings to write
+     *
+     * @return the builder
+     */
+    public static StringBuilder quote(StringBuilder sb, List<String> strings)
+    {
+        sb.append('[');
+        for (int i = 0; i < strings.size(); ++i)
+        {
+            if (i > 0)
+            {
+                sb.append(',');
+            }
+            quote(sb, strings.get(i));
+        }
+        return sb.append(']');
+    }
+
+    // @return the value starting at the current position
+    private Object value()
+    {
+        skipSpace();
+        if (pos >= text.length())
+        {
+            throw error("Unexpected end of text");
+        }
+        char c = text.charAt(pos);
+        switch (c)
+        {
+        case '{':
+        case '[':
+            if (++depth > MAX_DEPTH)
+            {
+                throw error("Nested too deeply");
+            }
+            Object nested = c == '{' ? object() : array();
+            --depth;
+            return nested;
+        case '"': return string();
+        case 't': return literal("true", Boolean.TRUE);
+        case 'f': return literal("false", Boolean.FALSE);
+        case 'n': return literal("null", null);
+        default:
+            if (c == '-' || (c >= '0' && c <= '9'))
+            {
+                return number();
+            }
+            throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object()
+    {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        ++pos;
+        skipSpace();
+        if (peek('}'))
+        {
+            return map;
+        }
+        do
+        {
+            skipSpace();
+            if (pos >= text.length() || text.charAt(pos) != '"')
+            {
+                throw error("Expected a member name");
+            }
+            String name = string();
+            skipSpace();
+            expect(':');
+            map.put(name, value());
+            skipSpace();
+        }
+        while (peek(','));
+        expect('}');
+        return map;
+    }
+
+    private List<Object> array()
+    {
+        List<Object> list = new ArrayList<Object>();
+        ++pos;
+        skipSpace();
+        if (peek(']'))
+        {
+            return list;
+        }
+        do
+        {
+            list.add(value());
+            skipSpace();
+        }
+        while (peek(','));
+        expect(']');
+        return list;
+    }
+
+    private String string()
+    {
+        StringBuilder sb = new StringBuilder();
+        ++pos;
+        while (true)
+        {
+            if (pos >= text.length())
+            {
+                throw error("Unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == '"')
+            {
+                return sb.toString();
+            }
+            if (c != '\\')
+            {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length())
+            {
+                throw error("Unterminated string");
+            }
+            c = text.charAt(pos++);
+            switch (c)
+            {
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+                if (pos + 4 > text.length())
+                {
+                    throw error("Bad unicode escape");
+                }
+                try
+                {
+                    sb.append((char)Integer.parseInt(text.substring(pos, pos + 4), 16));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw error("Bad unicode escape");
+                }
+                pos += 4;
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
+    private Double number()
+    {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+        {
+            ++pos;
+        }
+        try
+        {
+            return Double.valueOf(text.substring(start, pos));
+        }
+        catch (NumberFormatException e)
+        {
+            throw error("Bad number");
+        }
+    }
+
+    private Object literal(String word, Object value)
+    {
+        if (!text.startsWith(word, pos))
+        {
+            throw error("Unexpected word");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private void skipSpace()
+    {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+        {
+            ++pos;
+        }
+    }
+
+    // Step past a character if it's next
+    // @return whether it was
+    private boolean peek(char c)
+    {
+        if (pos < text.length() && text.charAt(pos) == c)
+        {
+            ++pos;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c)
+    {
+        if (!peek(c))
+        {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message)
+    {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
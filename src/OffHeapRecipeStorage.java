@@ -0,0 +1,75 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * OffHeapRecipeStorage.java
+ *
+ * Columnar recipe storage which keeps its arena off the Java heap, so that
+ * a multi-gigabyte collection doesn't have to be traced by the garbage
+ * collector.  Only the small per-recipe index (page, offset and title hash)
+ * stays on the heap.
+ *
+ * Pages are either direct buffers (limited by -XX:MaxDirectMemorySize), or,
+ * if a directory is given, memory-mapped temporary files in that directory,
+ * which lets the operating system page the collection in and out.
+ *
+ * Select this storage with -Dsat.storage=offheap, and map pages to files
+ * with -Dsat.storage.mapDir=<directory>
+ */
+public class OffHeapRecipeStorage extends ColumnarRecipeStorage
+{
+    // Directory to map page files in, or null for direct buffers
+    private final File mapDirectory;
+
+    /*
+     * Initialise a storage which keeps pages in direct buffers
+     */
+    public OffHeapRecipeStorage()
+    {
+        this(null);
+    }
+
+    /*
+     * Initialise a storage
+     *
+     * @param mapDirectory  Directory to map page files in, or null to keep
+     *                      pages in direct buffers
+     */
+    public OffHeapRecipeStorage(File mapDirectory)
+    {
+        this.mapDirectory = mapDirectory;
+    }
+
+    @Override
+    protected ByteBuffer newPage(int size)
+    {
+        if (mapDirectory == null)
+        {
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        try
+        {
+            // The mapping stays valid after the file is closed.  The file
+            // itself is only needed for as long as we are running.
+            File file = File.createTempFile("sat-recipes-", ".page", mapDirectory);
+            file.deleteOnExit();
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try
+            {
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not map recipe page in " + mapDirectory, e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.Locale;
+
+/*
+ * ParsedIngredient.java
+ *
+ * An ingredient line broken down into its quantity, unit and item, e.g.
+ * "1 1/2 cups plain flour, sifted" has quantity 1.5, unit CUP and item
+ * "plain flour".  Ranges such as "2-3 cloves garlic" keep both ends.
+ *
+ * The original line is kept too, so a scaled version of the line can be
+ * shown with the user's own wording, only changing the numbers.
+ *
+ * Made by IngredientParser.  Instances are immutable.
+ */
+public final class ParsedIngredient
+{
+    // Fractions we show quantities as, and how they are written
+    private static final double[] FRACTIONS = {
+        0, 1.0 / 8, 1.0 / 4, 1.0 / 3, 3.0 / 8, 1.0 / 2, 5.0 / 8, 2.0 / 3, 3.0 / 4, 7.0 / 8, 1
+    };
+    private static final String[] FRACTION_TEXT = {
+        "", "1/8", "1/4", "1/3", "3/8", "1/2", "5/8", "2/3", "3/4", "7/8", ""
+    };
+
+    // How close a quantity has to be to a fraction to be shown as one
+    private static final double FRACTION_TOLERANCE = 0.02;
+
+    // The line as written
+    private final String raw;
+
+    // Quantity (NaN if the line has none), and the top of the range (the
+    // same as quantity if it isn't a range)
+    private final double quantity, quantityMax;
+
+    // Where the quantity is written in the line
+    private final int quantityStart, quantityEnd;
+
+    // Unit (null if none was given)
+    private final IngredientUnit unit;
+
+    // Normalised item: lowercase, without preparation notes
+    private final String item;
+
+    ParsedIngredient(String raw, double quantity, double quantityMax,
+        int quantityStart, int quantityEnd, IngredientUnit unit, String item)
+    {
+        this.raw = raw;
+        this.quantity = quantity;
+        this.quantityMax = quantityMax;
+        this.quantityStart = quantityStart;
+        this.quantityEnd = quantityEnd;
+        this.unit = unit;
+        this.item = item;
+    }
+
+    /*
+     * Get the line with its quantity scaled
+     *
+     * @param factor  Amount to scale by
+     *
+     * @return the scaled line (or the original line if it has no quantity)
+     */
+    public String scaled(double factor)
+    {
+        if (!hasQuantity() || factor == 1)
+        {
+            return raw;
+        }
+
+        StringBuilder sb = new StringBuilder(raw.length() + 8);
+        sb.append(raw, 0, quantityStart);
+        sb.append(formatQuantity(quantity * factor));
+        if (isRange())
+        {
+            sb.append('-').append(formatQuantity(quantityMax * factor));
+        }
+        sb.append(raw, quantityEnd, raw.length());
+        return sb.toString();
+    }
+
+    /*
+     * Format a quantity the way a recipe would write it, using common
+     * fractions where possible (e.g. "1 1/2" rather than "1.5")
+     *
+     * @param q  Quantity to format
+     *
+     * @return the formatted quantity
+     */
+    public static String formatQuantity(double q)
+    {
+        long whole = (long)Math.floor(q);
+        double part = q - whole;
+
+        // Use the nearest common fraction, if one is close enough
+        for (int i = 0; i < FRACTIONS.length; ++i)
+        {
+            if (Math.abs(part - FRACTIONS[i]) > FRACTION_TOLERANCE)
+            {
+                continue;
+            }
+            if (i == FRACTIONS.length - 1)
+            {
+                ++whole;
+            }
+            String fraction = FRACTION_TEXT[i];
+            if (fraction.length() == 0)
+            {
+                return Long.toString(whole);
+            }
+            return whole == 0 ? fraction : whole + " " + fraction;
+        }
+
+        // Otherwise show up to two decimal places
+        String text = String.format(Locale.ROOT, "%.2f", q);
+        text = text.replaceAll("0+$", "");
+        return text.endsWith(".") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    // @return whether the line has a quantity
+    public boolean hasQuantity()
+    {
+        return !Double.isNaN(quantity);
+    }
+
+    // @return whether the quantity is a range
+    public boolean isRange()
+    {
+        return hasQuantity() && quantityMax != quantity;
+    }
+
+    // Getters
+
+    public String getRaw()
+    {
+        return raw;
+    }
+
+    public double getQuantity()
+    {
+        return quantity;
+    }
+
+    public double getQuantityMax()
+    {
+        return quantityMax;
+    }
+
+    public IngredientUnit getUnit()
+    {
+        return unit;
+    }
+
+    public String getItem()
+    {
+        return item;
+    }
+
+    @Override
+    public String toString()
+    {
+        return raw;
+    }
+}
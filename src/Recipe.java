@@ -1,38 +1,79 @@
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.*;
 
 /*
  * Recipe.java
  *
  * This class represents a single recipe object.
+ *
+ * Recipes are built up and then frozen when they are put in the recipe
+ * store.  A frozen recipe can't be changed in any way, so it can be shared
+ * freely between the UI and background threads (such as the saver) without
+ * locking.  Edits are made by building a new recipe and replacing the old
+ * one in the store.
  */
 @XmlRootElement
 public class Recipe
 {
+    // Unique, persistent ID of the recipe.  IDs are handed out densely by
+    // the recipe store; -1 means the recipe hasn't been given one yet.
+    private int id = -1;
+
     // The name of the recipe
     private String title = "";
 
     // Recipe description
     private String description = "";
 
+    // Number of servings the recipe makes (0 if not given)
+    private int servings = 0;
+
     // List of ingredients in the recipe.
-    private ArrayList<String> ingredients = new ArrayList<String>();
+    private List<String> ingredients;
 
     // List of steps in preparation procedure of the recipe
-    private ArrayList<String> procedure = new ArrayList<String>();
+    private List<String> procedure;
+
+    // Categorisation tags attached to this recipe, as a sorted set of ids
+    // from the tag dictionary (so duplicates can't creep in, even from a
+    // hand-edited recipes file)
+    private int[] tagIds = TagDictionary.NO_TAGS;
+
+    // Tag names, only while the recipe is being read from the recipes file
+    // (null otherwise)
+    private List<String> xmlTags;
+
+    // Whether the recipe has been frozen
+    private boolean frozen = false;
 
-    // List of categorisation tags attached to this recipe
-    // Note: we use an arraylist internally here as it's the most convenient
-    // and has the helper methods we need, but ideally this should be a HashSet
-    // to avoid duplicate tags.  For now we only allow constructing with a
-    // HashSet, so the only way to create duplicates is for the user to
-    // manually edit the recipes file and add them, which they are very
-    // unlikely to do.
-    private ArrayList<String> tags = new ArrayList<String>();
+    // Parsed ingredient lines, worked out when first asked for once the
+    // recipe is frozen (null until then)
+    private volatile ParsedIngredient[] parsedIngredients;
 
     // Need no-arg constructor for XML marshalling
-    public Recipe() {}
+    public Recipe()
+    {
+        ingredients = new ArrayList<String>();
+        procedure = new ArrayList<String>();
+    }
+
+    /*
+     * Construct a recipe with no contents of its own, for subclasses which
+     * provide the contents by overriding the getters.  Such recipes are
+     * frozen from the start.
+     *
+     * @param id  Recipe ID
+     */
+    protected Recipe(int id)
+    {
+        this.id = id;
+        this.frozen = true;
+    }
 
     /*
      * Construct a new recipe
@@ -50,26 +91,24 @@ public class Recipe
         this.description = desc;
         this.ingredients = ingredients;
         this.procedure = procedure;
-
-        this.tags = new ArrayList<String>(tags.size());
-        for (String tag : tags)
-        {
-            this.tags.add(tag);
-        }
-
-        // Set all tags to lowercase
-        lowercaseAllTags();
+        this.tagIds = toTagIds(tags);
     }
 
     /*
-     * Sets all tags to be lowercase
+     * Convert tag names to an id set.  Tags are lowercased first.
+     *
+     * @param tags  Tag names
+     *
+     * @return the tags' id set
      */
-    private void lowercaseAllTags()
+    private static int[] toTagIds(Collection<String> tags)
     {
-        for (int i = 0; i < tags.size(); ++i)
+        ArrayList<String> lowercase = new ArrayList<String>(tags.size());
+        for (String tag : tags)
         {
-            tags.set(i, tags.get(i).toLowerCase());
+            lowercase.add(tag.toLowerCase());
         }
+        return TagDictionary.toIds(lowercase, true);
     }
 
     /*
@@ -86,12 +125,76 @@ public class Recipe
         this(title, desc, ingredients, procedure, new HashSet<String>());
     }
 
+    /*
+     * Swap the recipe's ingredient lines for shared instances from the
+     * string pool, so that equal values across recipes are only stored
+     * once.  (Tags are already shared through the tag dictionary.)
+     */
+    public void internStrings()
+    {
+        checkNotFrozen();
+        StringPool.internAll(ingredients);
+    }
+
+    /*
+     * Freeze the recipe, so that it can't be changed from now on
+     */
+    public void freeze()
+    {
+        if (frozen)
+        {
+            return;
+        }
+        ingredients = Collections.unmodifiableList(ingredients);
+        procedure = Collections.unmodifiableList(procedure);
+        frozen = true;
+    }
+
+    // @return whether the recipe has been frozen
+    public boolean isFrozen()
+    {
+        return frozen;
+    }
+
+    // Throw if the recipe has been frozen
+    private void checkNotFrozen()
+    {
+        if (frozen)
+        {
+            throw new IllegalStateException("Recipe " + id + " is frozen");
+        }
+    }
+
+    // Called by JAXB once a recipe has been read from the recipes file
+    void afterUnmarshal(Unmarshaller unmarshaller, Object parent)
+    {
+        if (xmlTags != null)
+        {
+            tagIds = toTagIds(xmlTags);
+            xmlTags = null;
+        }
+        internStrings();
+    }
+
     // Getters and setters
 
+    // ID (written as an attribute so older files without IDs still load)
+    @XmlAttribute
+    public void setId(int id)
+    {
+        checkNotFrozen();
+        this.id = id;
+    }
+    public int getId()
+    {
+        return id;
+    }
+
     // Title
     @XmlElement
     public void setTitle(String title)
     {
+        checkNotFrozen();
         this.title = title;
     }
     public String getTitle()
@@ -103,6 +206,7 @@ public class Recipe
     @XmlElement
     public void setDescription(String description)
     {
+        checkNotFrozen();
         this.description = description;
     }
     public String getDescription()
@@ -110,14 +214,29 @@ public class Recipe
         return description;
     }
 
+    // Servings (optional in the recipes file).  Negative values (from a
+    // hand-edited file) are taken as zero, meaning not given, as the storages
+    // and the editor only handle counts from zero up.
+    @XmlElement
+    public void setServings(int servings)
+    {
+        checkNotFrozen();
+        this.servings = Math.max(0, servings);
+    }
+    public int getServings()
+    {
+        return servings;
+    }
+
     // Ingredients
     @XmlElementWrapper(name="Ingredients")
     @XmlElement(name="Ingredient")
-    public void setIngredients(ArrayList<String> ingredients)
+    public void setIngredients(List<String> ingredients)
     {
+        checkNotFrozen();
         this.ingredients = ingredients;
     }
-    public ArrayList<String> getIngredients()
+    public List<String> getIngredients()
     {
         return ingredients;
     }
@@ -125,30 +244,88 @@ public class Recipe
     // Procedure
     @XmlElementWrapper(name="Procedure")
     @XmlElement(name="Step")
-    public void setProcedure(ArrayList<String> procedure)
+    public void setProcedure(List<String> procedure)
     {
+        checkNotFrozen();
         this.procedure = procedure;
     }
-    public ArrayList<String> getProcedure()
+    public List<String> getProcedure()
     {
         return procedure;
     }
 
-    // Tags
+    // Tags as written in the recipes file (only used by JAXB).  While
+    // reading, JAXB fills in the list we give it; when writing, the names
+    // are worked out from the ids, so writing never changes the recipe.
     @XmlElementWrapper(name="Tags")
     @XmlElement(name="Tag")
-    public void setTags(ArrayList<String> tags)
+    private void setXmlTags(List<String> tags)
+    {
+        checkNotFrozen();
+        this.xmlTags = tags;
+    }
+    private List<String> getXmlTags()
+    {
+        if (xmlTags != null)
+        {
+            return xmlTags;
+        }
+        return hasTags() ? getTags() : null;
+    }
+
+    // Tag names (lowercased when set)
+    public void setTags(Collection<String> tags)
     {
-        this.tags = tags;
-        lowercaseAllTags();
+        checkNotFrozen();
+        this.tagIds = toTagIds(tags);
     }
+    @XmlTransient
     public ArrayList<String> getTags()
     {
-        return tags;
+        int[] ids = getTagIds();
+        ArrayList<String> names = new ArrayList<String>(ids.length);
+        for (int id : ids)
+        {
+            names.add(TagDictionary.nameOf(id));
+        }
+        return names;
+    }
+
+    // @return the sorted tag id set.  The array is shared, and must not be
+    //         modified.
+    public int[] getTagIds()
+    {
+        return tagIds;
     }
 
     // Convenience getters
 
+    /*
+     * Get the ingredient lines broken down into quantity, unit and item.
+     * Frozen recipes keep the result, so their lines are only parsed once.
+     *
+     * @return the parsed lines, in order.  The array may be shared, and must
+     *         not be modified.
+     */
+    public ParsedIngredient[] getParsedIngredients()
+    {
+        ParsedIngredient[] parsed = parsedIngredients;
+        if (parsed == null)
+        {
+            List<String> lines = getIngredients();
+            parsed = new ParsedIngredient[lines.size()];
+            for (int i = 0; i < parsed.length; ++i)
+            {
+                parsed[i] = IngredientParser.parse(lines.get(i));
+            }
+            if (isFrozen())
+            {
+                parsedIngredients = parsed;
+            }
+        }
+        return parsed;
+    }
+
     // @return number of ingredeints
     public int getIngredientsCount()
     {
@@ -170,6 +347,18 @@ public class Recipe
     // @return whether recipe has tags
     public boolean hasTags()
     {
-        return tags.size() > 0;
+        return getTagIds().length > 0;
+    }
+
+    // @return whether recipe has the tag with an id
+    public boolean hasTag(int tagId)
+    {
+        return TagDictionary.contains(getTagIds(), tagId);
+    }
+
+    // @return whether recipe has any of a sorted set of tag ids
+    public boolean hasAnyTag(int[] tagIds)
+    {
+        return TagDictionary.intersects(getTagIds(), tagIds);
     }
 }
@@ -13,6 +13,10 @@ public class RecipeContainer
     // The recipes we are containing
     private ArrayList<Recipe> recipes;
 
+    // Next recipe ID the store will hand out (0 in files saved before this
+    // was written)
+    private int nextId = 0;
+
     // Need no-arg constructor for XML
     public RecipeContainer() {}
 
@@ -26,6 +30,18 @@ public class RecipeContainer
         this.recipes = recipes;
     }
 
+    /*
+     * Construct recipe container
+     *
+     * @param recipes  List of recipes
+     * @param nextId   Next recipe ID the store will hand out
+     */
+    public RecipeContainer(ArrayList<Recipe> recipes, int nextId)
+    {
+        this.recipes = recipes;
+        this.nextId = nextId;
+    }
+
     // Getters and setters
 
     // Title
@@ -39,6 +55,18 @@ public class RecipeContainer
         return recipes;
     }
 
+    // Next ID (an attribute, so IDs of deleted recipes aren't reused after
+    // restarting)
+    @XmlAttribute
+    public void setNextId(int nextId)
+    {
+        this.nextId = nextId;
+    }
+    public int getNextId()
+    {
+        return nextId;
+    }
+
     // Get size of the recipe list (for convenience)
     public int getSize()
     {
@@ -0,0 +1,194 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
+
+/*
+ * RecipeDocumentBuilder.java
+ *
+ * Builds the styled documents the recipe viewer shows.  A document is built
+ * on its own, before any text pane is showing it, so inserting each line
+ * fires no events and causes no relayout; the finished document is then
+ * swapped into the pane in one go.
+ *
+ * Each document gets its own style context, so documents can be built on
+ * any thread.
+ */
+public class RecipeDocumentBuilder
+{
+    private static final String INGREDIENT_PREFIX = "\u2022 ";
+
+    // Document being built, and its styles
+    private final DefaultStyledDocument doc;
+    private final Style mainStyle, headingStyle, subheadingStyle, tagsStyle;
+
+    /*
+     * Build the document showing a recipe
+     *
+     * @param recipe    Recipe to show
+     * @param servings  Number of servings to scale the ingredients to (only
+     *                  used if the recipe says how many it serves)
+     *
+     * @return the new document
+     */
+    public static DefaultStyledDocument build(Recipe recipe, int servings)
+    {
+        RecipeDocumentBuilder builder = new RecipeDocumentBuilder();
+        builder.writeRecipe(recipe, servings);
+        return builder.doc;
+    }
+
+    /*
+     * Build a document showing a message
+     *
+     * @param message  Text of the message
+     *
+     * @return the new document
+     */
+    public static DefaultStyledDocument buildMessage(String message)
+    {
+        RecipeDocumentBuilder builder = new RecipeDocumentBuilder();
+        builder.appendLine(message, builder.mainStyle);
+        return builder.doc;
+    }
+
+    private RecipeDocumentBuilder()
+    {
+        // Prepare StyleContext, and the document to build
+        StyleContext ctx = new StyleContext();
+        doc = new DefaultStyledDocument(ctx);
+
+        // Set up main document style (used for paragraph text)
+        Style defaultStyle = ctx.getStyle(StyleContext.DEFAULT_STYLE);
+        mainStyle = ctx.addStyle("MainStyle", defaultStyle);
+        StyleConstants.setFontFamily(mainStyle, "serif");
+        StyleConstants.setFontSize(mainStyle, 18);
+        StyleConstants.setAlignment(mainStyle, StyleConstants.ALIGN_LEFT);
+        StyleConstants.setLeftIndent(mainStyle, 32);
+        StyleConstants.setRightIndent(mainStyle, 32);
+        StyleConstants.setLineSpacing(mainStyle, 0.2f);
+        doc.setLogicalStyle(0, mainStyle);
+
+        // Set up heading document style
+        headingStyle = ctx.addStyle("HeadingStyle", null);
+        StyleConstants.setForeground(headingStyle, Color.red);
+        StyleConstants.setFontFamily(headingStyle, "serif");
+        StyleConstants.setFontSize(headingStyle, 32);
+        StyleConstants.setBold(headingStyle, true);
+        StyleConstants.setItalic(headingStyle, true);
+        StyleConstants.setAlignment(headingStyle, StyleConstants.ALIGN_CENTER);
+        StyleConstants.setLineSpacing(headingStyle, 0.1f);
+
+        // Set up heading document style
+        subheadingStyle = ctx.addStyle("SubheadingStyle", null);
+        StyleConstants.setForeground(subheadingStyle, Color.blue);
+        StyleConstants.setFontFamily(subheadingStyle, "serif");
+        StyleConstants.setFontSize(subheadingStyle, 26);
+        StyleConstants.setAlignment(subheadingStyle, StyleConstants.ALIGN_CENTER);
+        StyleConstants.setLineSpacing(subheadingStyle, 0.1f);
+
+        // Set up tags section document style
+        tagsStyle = ctx.addStyle("TagsStyle", null);
+        StyleConstants.setForeground(tagsStyle, Color.gray);
+        StyleConstants.setFontFamily(tagsStyle, "serif");
+        StyleConstants.setFontSize(tagsStyle, 14);
+        StyleConstants.setAlignment(tagsStyle, StyleConstants.ALIGN_CENTER);
+        StyleConstants.setLineSpacing(tagsStyle, 0.1f);
+    }
+
+    // Write out a whole recipe
+    private void writeRecipe(Recipe recipe, int servings)
+    {
+        // First print out the recipe title in the heading style
+        appendLine(recipe.getTitle(), headingStyle);
+
+        // Print out description
+        appendLine(recipe.getDescription(), mainStyle);
+
+        // Print out the recipe's tags
+        if (recipe.hasTags())
+        {
+            final ArrayList<String> tags = recipe.getTags();
+            appendText("Tags: ", tagsStyle);
+            for (int i = 0; i < tags.size(); ++i)
+            {
+                if (i == tags.size() - 1)
+                {
+                    // Final tag: no comma
+                    appendText(String.format("%s", tags.get(i)), tagsStyle);
+                    continue;
+                }
+                // Tags not at end get a comma with comma
+                appendText(String.format("%s, ", tags.get(i)), tagsStyle);
+            }
+        }
+        // Add a line break after the tag list
+        appendLine("\n", tagsStyle);
+
+        // Ingredients subheading
+        appendLine("Ingredients", subheadingStyle);
+
+        // Write all the ingredients, scaled to the number of servings.  The
+        // parsed lines are kept by the recipe, so rescaling doesn't parse
+        // anything again.
+        double scale = 1;
+        if (recipe.getServings() > 0 && servings > 0)
+        {
+            scale = (double)servings / recipe.getServings();
+        }
+        for (ParsedIngredient ingredient : recipe.getParsedIngredients())
+        {
+            // Ingredients are prefixed with constant prefix (bullet point character)
+            appendLine(String.format("%s%s", INGREDIENT_PREFIX, ingredient.scaled(scale)), mainStyle);
+        }
+
+        // Procedure subheading
+        appendLine("Directions", subheadingStyle);
+
+        // Write all the steps
+        for (int i = 0; i < recipe.getProcedureSize(); ++i)
+        {
+            // Steps are prefixed with step number
+            appendLine(String.format("%,d. %s", i + 1, recipe.getProcedureItem(i)), mainStyle);
+        }
+    }
+
+    /*
+     * Append text to the document.
+     *
+     * @param text   Text to write
+     * @param style  Style to display text with
+     */
+    private void appendText(String text, Style style)
+    {
+        try
+        {
+            // Insert text at end of the document
+            doc.insertString(doc.getLength(), text, style);
+        }
+        catch (BadLocationException e)
+        {
+            // Print error to stdout
+            System.err.println("Error while displaying recipe text content.");
+            e.printStackTrace();
+
+            // Don't show error dialog as this will be run in a loop and may
+            // make the program irritating to work with
+        }
+    }
+
+    /*
+     * Append text to the document.
+     * New-lines are automatically inserted at end of text
+     *
+     * @param text   Text to write
+     * @param style  Style to display text with
+     */
+    private void appendLine(String text, Style style)
+    {
+        appendText(text + "\n", style);
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import javax.swing.text.DefaultStyledDocument;
+
+/*
+ * RecipeDocumentCache.java
+ *
+ * Cache of the styled documents built for the recipe viewer, so going back
+ * to a recipe shown recently (or one prefetched before it was asked for)
+ * needs no building at all.  The cache is bounded by an estimate of the
+ * memory its documents use, dropping the least recently used first.
+ *
+ * Documents are kept by recipe ID and number of servings, along with the
+ * version of the recipe they were built from.  Stored recipes are frozen,
+ * and every save stores a new recipe object, so the stored object itself
+ * identifies the version: a document built from an older version is never
+ * returned.
+ *
+ * The cache can be used from any thread.
+ */
+public class RecipeDocumentCache
+{
+    // Estimated bytes used by each paragraph of a document (its elements
+    // and attribute sets), on top of two bytes per character
+    private static final int BYTES_PER_PARAGRAPH = 256;
+
+    // A cached document
+    private static class CachedDocument
+    {
+        final Recipe recipe;
+        final DefaultStyledDocument doc;
+        final long bytes;
+
+        CachedDocument(Recipe recipe, DefaultStyledDocument doc)
+        {
+            this.recipe = recipe;
+            this.doc = doc;
+            this.bytes = 2L * doc.getLength() +
+                (long)BYTES_PER_PARAGRAPH * doc.getDefaultRootElement().getElementCount();
+        }
+    }
+
+    // Documents by key, least recently used first
+    private final LinkedHashMap<Long, CachedDocument> entries =
+        new LinkedHashMap<Long, CachedDocument>(64, 0.75f, true);
+
+    // Most bytes the documents may use, and the bytes they use now
+    private final long maxBytes;
+    private long bytes = 0;
+
+    /*
+     * Initialise a new cache
+     *
+     * @param maxBytes  Estimated bytes of memory the documents may use
+     */
+    public RecipeDocumentCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * Get the document for a recipe, building it if it isn't cached
+     *
+     * @param recipe    Stored recipe to show
+     * @param servings  Number of servings to show it at
+     *
+     * @return the document
+     */
+    public DefaultStyledDocument get(Recipe recipe, int servings)
+    {
+        DefaultStyledDocument doc = find(recipe, servings);
+        if (doc == null)
+        {
+            doc = RecipeDocumentBuilder.build(recipe, servings);
+            put(recipe, servings, doc);
+        }
+        return doc;
+    }
+
+    /*
+     * Look up a cached document without building one
+     *
+     * @param recipe    Stored recipe
+     * @param servings  Number of servings
+     *
+     * @return the document, or null if it isn't cached
+     */
+    public DefaultStyledDocument find(Recipe recipe, int servings)
+    {
+        synchronized (entries)
+        {
+            CachedDocument cached = entries.get(key(recipe, servings));
+            return cached != null && cached.recipe == recipe ? cached.doc : null;
+        }
+    }
+
+    // @return estimated bytes used by the cached documents
+    public long getBytes()
+    {
+        synchronized (entries)
+        {
+            return bytes;
+        }
+    }
+
+    // Forget every document
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    // Add a document, then drop the least recently used documents until
+    // we're within budget again (always keeping the new one)
+    private void put(Recipe recipe, int servings, DefaultStyledDocument doc)
+    {
+        CachedDocument added = new CachedDocument(recipe, doc);
+        synchronized (entries)
+        {
+            CachedDocument old = entries.put(key(recipe, servings), added);
+            bytes += added.bytes - (old == null ? 0 : old.bytes);
+
+            Iterator<CachedDocument> it = entries.values().iterator();
+            while (bytes > maxBytes && entries.size() > 1)
+            {
+                bytes -= it.next().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    // @return the key for a recipe shown at a number of servings
+    private static Long key(Recipe recipe, int servings)
+    {
+        return ((long)recipe.getId() << 32) | (servings & 0xffffffffL);
+    }
+}
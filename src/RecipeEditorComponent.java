@@ -85,6 +85,15 @@ public class RecipeEditorComponent extends JPanel
         // Spacer
         leftPanel.add(Box.createRigidArea(new Dimension(0, 16)));
 
+        // Servings label and spinner (zero means not given)
+        leftPanel.add(SAT.genLeftJLabel("(Optional) Servings"));
+        final JSpinner recipeServingsSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 1000, 1));
+        recipeServingsSpinner.setMaximumSize(new Dimension(Integer.MAX_VALUE, recipeServingsSpinner.getPreferredSize().height));
+        leftPanel.add(recipeServingsSpinner);
+
+        // Spacer
+        leftPanel.add(Box.createRigidArea(new Dimension(0, 16)));
+
         // Ingredients label
         rightPanel.add(SAT.genLeftJLabel("Ingredients:"));
 
@@ -162,6 +171,9 @@ public class RecipeEditorComponent extends JPanel
             // Set description
             recipeDescArea.setText(recipeToEdit.getDescription());
 
+            // Set servings
+            recipeServingsSpinner.setValue(recipeToEdit.getServings());
+
             // Set ingredients
             recipeIngredientsListModel.clear();
             recipeIngredientsListModel.ensureCapacity(recipeToEdit.getIngredientsCount());
@@ -213,7 +225,7 @@ public class RecipeEditorComponent extends JPanel
                 while(enumIngredients.hasMoreElements())
                 {
                     // Add next element in enumeration
-                    recipeIngredients.add((String)enumIngredients.nextElement());
+                    recipeIngredients.add(StringPool.intern((String)enumIngredients.nextElement()));
                 }
 
                 // Iterate over steps from the procedure list and store
@@ -239,7 +251,7 @@ public class RecipeEditorComponent extends JPanel
                     String tag = recipeTagTokens[i].trim().toLowerCase();
                     if (tag.length() > 0)
                     {
-                        recipeTags.add(tag);
+                        recipeTags.add(StringPool.intern(tag));
                     }
                 }
 
@@ -250,6 +262,7 @@ public class RecipeEditorComponent extends JPanel
                     recipeIngredients,
                     recipeProcedure,
                     recipeTags);
+                recipeToSave.setServings((Integer)recipeServingsSpinner.getValue());
 
                 // Make sure we have a title on the r ecipe
                 if (recipeToSave.getTitle().length() == 0)
@@ -262,14 +275,18 @@ public class RecipeEditorComponent extends JPanel
                     return;
                 }
 
+                // Get the old recipe that was edited (if it hasn't been
+                // deleted in the meantime)
+                Recipe oldRecipe = null;
                 if (recipeToEdit != null)
                 {
-                    // Remove old recipe that was edited
-                    SAT.savedRecipes.remove(recipeToEdit.getTitle());
+                    oldRecipe = SAT.engine.get(recipeToEdit.getId());
                 }
 
-                // Make sure the recipe title doesn't already exist
-                if (SAT.savedRecipes.containsKey(recipeToSave.getTitle()))
+                // Make sure the recipe title doesn't already exist (other
+                // than on the recipe being edited)
+                if (SAT.engine.containsTitle(recipeToSave.getTitle()) &&
+                    !(oldRecipe != null && oldRecipe.getTitle().equals(recipeToSave.getTitle())))
                 {
                     // Show error message
                     JOptionPane.showMessageDialog(frame,
@@ -279,20 +296,26 @@ public class RecipeEditorComponent extends JPanel
                     return;
                 }
 
-                // Save new recipe
-                SAT.savedRecipes.put(recipeToSave.getTitle(), recipeToSave);
+                // Save new recipe.  The recipe list and search window hear
+                // about it from the store.
+                Recipe saved;
+                if (oldRecipe != null)
+                {
+                    saved = SAT.engine.replace(oldRecipe, recipeToSave);
+                }
+                else
+                {
+                    saved = SAT.engine.add(recipeToSave);
+                }
 
                 // Show the recipe in the viewer
-                SAT.recipeViewer.viewRecipe(recipeToSave);
-
-                // Refresh the recipe list
-                SAT.recipeList.refresh();
-
-                // Refresh tags list in recipe searcher
-                SAT.recipeSearchUpdate();
+                SAT.recipeViewer.viewRecipe(saved);
 
                 // Remove from editor frames list
-                SAT.editorFrames.remove(frame);
+                if (recipeToEdit != null)
+                {
+                    SAT.editorFrames.remove(recipeToEdit.getId());
+                }
 
                 // Close the window
                 SAT.closeWindow(frame);
@@ -307,7 +330,10 @@ public class RecipeEditorComponent extends JPanel
             public void actionPerformed(ActionEvent e)
             {
                 // Remove from editor frames list
-                SAT.editorFrames.remove(frame);
+                if (recipeToEdit != null)
+                {
+                    SAT.editorFrames.remove(recipeToEdit.getId());
+                }
 
                 // Close the window
                 SAT.closeWindow(frame);
@@ -0,0 +1,200 @@
+import java.io.File;
+import java.util.ArrayList;
+import javax.xml.bind.JAXBException;
+
+/*
+ * RecipeEngine.java
+ *
+ * The program's recipes and everything done with them, without any user
+ * interface: the store, reading and writing the recipes file, searching and
+ * tag filtering (through RecipeSearch), and events for changes.  The Swing
+ * components are clients of an engine, and so are the batch tools and
+ * benchmarks, so they all run the same code.
+ *
+ * Like the store, an engine is changed from one thread (the event dispatch
+ * thread in the program), and snapshots of its recipes can be read from
+ * any thread.
+ */
+public class RecipeEngine
+{
+    // Recipes file
+    private final File file;
+
+    // Recipes
+    private final RecipeStore store;
+
+    /*
+     * Initialise a new engine, with no recipes until load() is called
+     *
+     * @param file  Recipes file to load from and save to
+     */
+    public RecipeEngine(File file)
+    {
+        this(file, new RecipeStore());
+    }
+
+    /*
+     * Initialise a new engine around an empty store
+     *
+     * @param file   Recipes file to load from and save to
+     * @param store  Store to keep the recipes in
+     */
+    public RecipeEngine(File file, RecipeStore store)
+    {
+        this.file = file;
+        this.store = store;
+    }
+
+    /*
+     * Load the recipes file into the store.  Call once, before anything
+     * else.  A missing file gives no recipes.
+     */
+    public void load() throws JAXBException
+    {
+        Object event = RecipeEvents.getInstance().beginLoad();
+        RecipeContainer container = RecipeFile.readContainer(file);
+        store.load(container.getRecipes(), container.getNextId());
+        RecipeEvents.getInstance().endLoad(event, store.size(), file.length());
+    }
+
+    /*
+     * Save the recipes to the recipes file.  A snapshot is written, so the
+     * file always holds a consistent set of recipes, and this can be called
+     * from any thread.
+     */
+    public void save() throws JAXBException
+    {
+        Object event = RecipeEvents.getInstance().beginSave();
+        // The next ID is read after the snapshot, so it is past every ID in it
+        ArrayList<Recipe> recipes = store.getSnapshot().getRecipes();
+        RecipeFile.write(recipes, store.getIdLimit(), file);
+        RecipeEvents.getInstance().endSave(event, recipes.size(), file.length());
+    }
+
+    /*
+     * Add a new recipe.  The recipe is given a new ID.
+     *
+     * @param recipe  Recipe to add.  Its title must not already be in use.
+     *
+     * @return the stored version of the recipe
+     */
+    public Recipe add(Recipe recipe)
+    {
+        Object event = RecipeEvents.getInstance().beginMutation();
+        Recipe stored = store.add(recipe);
+        RecipeEvents.getInstance().endMutation(event, RecipeEvents.ADD, stored.getId(), store.size());
+        return stored;
+    }
+
+    /*
+     * Replace a recipe with a new version of it
+     *
+     * @param oldRecipe  Recipe being replaced
+     * @param newRecipe  New version of the recipe.  If the title changed, the
+     *                   new title must not already be in use.
+     *
+     * @return the stored version of the new recipe
+     */
+    public Recipe replace(Recipe oldRecipe, Recipe newRecipe)
+    {
+        Object event = RecipeEvents.getInstance().beginMutation();
+        Recipe stored = store.replace(oldRecipe, newRecipe);
+        RecipeEvents.getInstance().endMutation(event, RecipeEvents.REPLACE, stored.getId(), store.size());
+        return stored;
+    }
+
+    /*
+     * Remove a recipe
+     *
+     * @param id  ID of the recipe to remove
+     *
+     * @return the removed recipe, or null if there was no such recipe
+     */
+    public Recipe remove(int id)
+    {
+        Object event = RecipeEvents.getInstance().beginMutation();
+        Recipe removed = store.remove(id);
+        RecipeEvents.getInstance().endMutation(event, RecipeEvents.REMOVE, id, store.size());
+        return removed;
+    }
+
+    // Note that a recipe was viewed, for the recently viewed order
+    public void recipeViewed(Recipe recipe)
+    {
+        store.recipeViewed(recipe);
+    }
+
+    // @return a new search over the recipes, with every tag selected and
+    //         an empty query
+    public RecipeSearch newSearch()
+    {
+        return new RecipeSearch(store);
+    }
+
+    // Getters
+
+    // @return the recipes file
+    public File getFile()
+    {
+        return file;
+    }
+
+    // @return the store the recipes are kept in
+    public RecipeStore getStore()
+    {
+        return store;
+    }
+
+    // @return the recipe with an ID, or null if there isn't one
+    public Recipe get(int id)
+    {
+        return store.get(id);
+    }
+
+    // @return whether a recipe with a title exists
+    public boolean containsTitle(String title)
+    {
+        return store.containsTitle(title);
+    }
+
+    // @return number of recipes
+    public int size()
+    {
+        return store.size();
+    }
+
+    // @return the latest snapshot of the recipes (safe to call from any
+    //         thread)
+    public RecipeSnapshot getSnapshot()
+    {
+        return store.getSnapshot();
+    }
+
+    // @return the tag registry index
+    public TagRegistry getTagRegistry()
+    {
+        return store.getTagRegistry();
+    }
+
+    // @return the recipe ordering index
+    public RecipeOrdering getOrdering()
+    {
+        return store.getOrdering();
+    }
+
+    // @return the ingredient index
+    public IngredientIndex getIngredientIndex()
+    {
+        return store.getIngredientIndex();
+    }
+
+    // Subscribe to batches of changes
+    public void addListener(RecipeStoreListener l)
+    {
+        store.addListener(l);
+    }
+    public void removeListener(RecipeStoreListener l)
+    {
+        store.removeListener(l);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * RecipeEvents.java
+ *
+ * Application events for Java Flight Recorder: loading and saving recipes,
+ * searches, tag filters, viewer renders and changes to the store, so that a
+ * recording (jcmd <pid> JFR.start) shows our own hot spots next to the GC
+ * and allocation data.
+ *
+ * The program is built for Java 7, which has no JFR API, so the events
+ * themselves are in JfrRecipeEvents (in jfr/, built with "make jfr").  If
+ * that class can be loaded it is used; otherwise this class is used, and
+ * does nothing.
+ *
+ * Each operation is timed by calling a begin method, which returns the
+ * event (or null when JFR isn't recording it), then the matching end
+ * method.  When events are off the cost is one call returning null.
+ */
+public class RecipeEvents
+{
+    // Class with the JFR events (built separately, and only on JDK 8u262+)
+    private static final String JFR_EVENTS_CLASS = "JfrRecipeEvents";
+
+    // Kinds of store change
+    public static final String ADD = "add";
+    public static final String REPLACE = "replace";
+    public static final String REMOVE = "remove";
+
+    // Events in use
+    private static final RecipeEvents instance = load();
+
+    // @return the events in use
+    public static RecipeEvents getInstance()
+    {
+        return instance;
+    }
+
+    // @return the JFR events, if they can be loaded, or else the no-op ones
+    private static RecipeEvents load()
+    {
+        try
+        {
+            return (RecipeEvents)Class.forName(JFR_EVENTS_CLASS).newInstance();
+        }
+        catch (ClassNotFoundException e)
+        {
+            // Not built; no events
+        }
+        catch (Throwable t)
+        {
+            // Built, but this JVM can't run it (no JFR, or too old)
+            System.err.println("Flight recorder events unavailable: " + t);
+        }
+        return new RecipeEvents();
+    }
+
+    // @return whether events are emitted at all
+    public boolean isAvailable()
+    {
+        return false;
+    }
+
+    // Start loading the recipes file
+    public Object beginLoad()
+    {
+        return null;
+    }
+
+    /*
+     * Finish loading the recipes file
+     *
+     * @param event    Event from beginLoad()
+     * @param recipes  Number of recipes loaded
+     * @param bytes    Size of the file
+     */
+    public void endLoad(Object event, int recipes, long bytes)
+    {
+    }
+
+    // Start saving the recipes file
+    public Object beginSave()
+    {
+        return null;
+    }
+
+    /*
+     * Finish saving the recipes file
+     *
+     * @param event    Event from beginSave()
+     * @param recipes  Number of recipes saved
+     * @param bytes    Size of the file written
+     */
+    public void endSave(Object event, int recipes, long bytes)
+    {
+    }
+
+    // Start a text search
+    public Object beginSearch()
+    {
+        return null;
+    }
+
+    /*
+     * Finish a text search
+     *
+     * @param event        Event from beginSearch()
+     * @param queryLength  Length of the search query
+     * @param candidates   Number of recipes checked
+     * @param results      Number of recipes found
+     */
+    public void endSearch(Object event, int queryLength, int candidates, int results)
+    {
+    }
+
+    // Start applying the tag filter
+    public Object beginTagFilter()
+    {
+        return null;
+    }
+
+    /*
+     * Finish applying the tag filter
+     *
+     * @param event            Event from beginTagFilter()
+     * @param tags             Number of tags selected
+     * @param includeUntagged  Whether untagged recipes were included
+     * @param recipes          Number of recipes checked
+     * @param results          Number of recipes found
+     */
+    public void endTagFilter(Object event, int tags, boolean includeUntagged, int recipes, int results)
+    {
+    }
+
+    // Start showing a recipe in the viewer
+    public Object beginRender()
+    {
+        return null;
+    }
+
+    /*
+     * Finish showing a recipe in the viewer
+     *
+     * @param event     Event from beginRender()
+     * @param recipeId  ID of the recipe shown
+     * @param servings  Number of servings it was shown at
+     * @param cached    Whether its document was already cached
+     */
+    public void endRender(Object event, int recipeId, int servings, boolean cached)
+    {
+    }
+
+    // Start changing the store
+    public Object beginMutation()
+    {
+        return null;
+    }
+
+    /*
+     * Finish changing the store
+     *
+     * @param event     Event from beginMutation()
+     * @param kind      ADD, REPLACE or REMOVE
+     * @param recipeId  ID of the recipe changed
+     * @param size      Number of recipes stored afterwards
+     */
+    public void endMutation(Object event, String kind, int recipeId, int size)
+    {
+    }
+}
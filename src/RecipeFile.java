@@ -0,0 +1,195 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+/*
+ * RecipeFile.java
+ *
+ * Reads and writes recipes files (the RecipeContainer XML schema).  Nothing
+ * here touches the user interface, so the same code can be used by the
+ * program itself and by headless tools such as the benchmarks.
+ *
+ * Creating a JAXB context is expensive, so one is made the first time it is
+ * needed and shared from then on (contexts are thread-safe; marshallers and
+ * unmarshallers are not, so a new one is made for each call).
+ *
+ * Files are written to a temporary file beside them, which is then renamed
+ * over the old file, so a save that fails or is cut short leaves the old
+ * file as it was rather than half written.
+ *
+ * Reading and writing files is timed in RecipeMetrics.
+ */
+public class RecipeFile
+{
+    // Shared JAXB context for RecipeContainer
+    private static JAXBContext context = null;
+
+    // @return the shared JAXB context
+    private static synchronized JAXBContext getContext() throws JAXBException
+    {
+        if (context == null)
+        {
+            context = JAXBContext.newInstance(RecipeContainer.class);
+        }
+        return context;
+    }
+
+    /*
+     * Read the recipes from a file
+     *
+     * @param file  File to read
+     *
+     * @return the recipes (empty if the file doesn't exist or has none)
+     */
+    public static ArrayList<Recipe> read(File file) throws JAXBException
+    {
+        return readContainer(file).getRecipes();
+    }
+
+    /*
+     * Read the recipes from a file, along with the next ID saved with them
+     *
+     * @param file  File to read
+     *
+     * @return a container of the recipes (with an empty list if the file
+     *         doesn't exist or has none)
+     */
+    public static RecipeContainer readContainer(File file) throws JAXBException
+    {
+        if (!file.exists())
+        {
+            // No recipes file yet
+            return new RecipeContainer(new ArrayList<Recipe>());
+        }
+        long start = System.nanoTime();
+        RecipeContainer container = (RecipeContainer)getContext().createUnmarshaller().unmarshal(file);
+        RecipeMetrics.getInstance().recordLoad(System.nanoTime() - start, file.length());
+        if (container == null)
+        {
+            return new RecipeContainer(new ArrayList<Recipe>());
+        }
+        if (!container.hasRecipes())
+        {
+            container.setRecipes(new ArrayList<Recipe>());
+        }
+        return container;
+    }
+
+    /*
+     * Read recipes from a stream
+     *
+     * @param in  Stream to read
+     *
+     * @return the recipes (empty if there are none)
+     */
+    public static ArrayList<Recipe> read(InputStream in) throws JAXBException
+    {
+        return recipesOf(getContext().createUnmarshaller().unmarshal(in));
+    }
+
+    // @return the recipes in an unmarshalled container
+    private static ArrayList<Recipe> recipesOf(Object unmarshalled)
+    {
+        RecipeContainer container = (RecipeContainer)unmarshalled;
+        if (container == null || !container.hasRecipes())
+        {
+            // No recipes
+            return new ArrayList<Recipe>();
+        }
+        return container.getRecipes();
+    }
+
+    /*
+     * Write recipes to a file, replacing it
+     *
+     * @param recipes  Recipes to write
+     * @param file     File to write
+     */
+    public static void write(Collection<Recipe> recipes, File file) throws JAXBException
+    {
+        write(recipes, 0, file);
+    }
+
+    /*
+     * Write recipes to a file, replacing it
+     *
+     * @param recipes  Recipes to write
+     * @param nextId   Next ID the store will hand out, saved so it isn't
+     *                 handed out again after a restart
+     * @param file     File to write
+     */
+    public static void write(Collection<Recipe> recipes, int nextId, File file) throws JAXBException
+    {
+        RecipeContainer container = containerOf(recipes);
+        container.setNextId(nextId);
+        long start = System.nanoTime();
+        File temp = null;
+        try
+        {
+            temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+            createMarshaller().marshal(container, temp);
+            replace(temp, file);
+        }
+        catch (IOException e)
+        {
+            throw new JAXBException("Could not write " + file, e);
+        }
+        finally
+        {
+            if (temp != null)
+            {
+                temp.delete();
+            }
+        }
+        RecipeMetrics.getInstance().recordSave(System.nanoTime() - start, file.length());
+    }
+
+    // Rename a file over another, atomically if the file system can
+    private static void replace(File source, File target) throws IOException
+    {
+        try
+        {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+     * Write recipes to a stream
+     *
+     * @param recipes  Recipes to write
+     * @param out      Stream to write to
+     */
+    public static void write(Collection<Recipe> recipes, OutputStream out) throws JAXBException
+    {
+        createMarshaller().marshal(containerOf(recipes), out);
+    }
+
+    // @return a new marshaller, with pretty-printing enabled
+    private static Marshaller createMarshaller() throws JAXBException
+    {
+        Marshaller marshal = getContext().createMarshaller();
+        marshal.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        return marshal;
+    }
+
+    // @return a container holding some recipes
+    private static RecipeContainer containerOf(Collection<Recipe> recipes)
+    {
+        return new RecipeContainer(recipes instanceof ArrayList ?
+            (ArrayList<Recipe>)recipes : new ArrayList<Recipe>(recipes));
+    }
+}
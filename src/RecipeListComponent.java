@@ -2,16 +2,20 @@ import java.awt.*;
 import javax.swing.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseAdapter;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.List;
 
-public class RecipeListComponent extends JPanel
+public class RecipeListComponent extends JPanel implements RecipeStoreListener
 {
     // Internal list model
-    private DefaultListModel<String> listModel;
+    private RecipeListModel listModel;
 
     // List component
     private JList<String> list;
 
+    // Order the recipes are listed in
+    private RecipeOrdering.Order order = RecipeOrdering.Order.TITLE;
+
     /*
      * Initialises a new RecipeListComponent
      */
@@ -21,13 +25,16 @@ public class RecipeListComponent extends JPanel
         setLayout(new BorderLayout());
 
         // Prepare list model
-        listModel = new DefaultListModel<String>();
-
-        refresh();
+        listModel = new RecipeListModel();
 
         // Create the main recipe list object
         list = new JList<String>(listModel);
 
+        refresh();
+
+        // Keep up to date with changes to the recipes
+        SAT.engine.addListener(this);
+
         // Disable multi-select
         list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
@@ -59,15 +66,15 @@ public class RecipeListComponent extends JPanel
                     // Reselect the item
                     list.setSelectedIndex(index);
 
-                    // Get name of cell (recipe title)
-                    String title = listModel.getElementAt(index);
+                    // Get ID of the recipe in the cell
+                    int id = listModel.getRecipeAt(index).getId();
 
                     // Show the recipe in the recipe viewer (if we aren't
                     // already on it)
                     if (!(SAT.recipeViewer.currentRecipe != null &&
-                        title == SAT.recipeViewer.currentRecipe.getTitle()))
+                        id == SAT.recipeViewer.currentRecipe.getId()))
                     {
-                        SAT.viewRecipe(title);
+                        SAT.viewRecipe(id);
                     }
                 }
             }
@@ -87,17 +94,12 @@ public class RecipeListComponent extends JPanel
      */
     public void refresh()
     {
-        // Clear old data
-        listModel.clear();
-
-        // Reserve space for the elements
-        listModel.ensureCapacity(SAT.savedRecipes.size());
+        // Clear old selection, as rows are about to change
+        list.clearSelection();
 
-        // Add all elements
-        for (Recipe recipe : SAT.savedRecipes.values())
-        {
-            listModel.addElement(recipe.getTitle());
-        }
+        // Replace all elements at once
+        listModel.setRecipes(SAT.engine.getOrdering().toArray(order), null);
+        SAT.sizeListCells(list);
 
         // Stop here if we haven't got any selected recipe
         if (SAT.recipeViewer == null || SAT.recipeViewer.currentRecipe == null)
@@ -114,25 +116,141 @@ public class RecipeListComponent extends JPanel
      */
     public void refreshSelection()
     {
-        // Search for the selected recipe index, and select the element
-        Enumeration<?> enumRecipes = listModel.elements();
-        boolean found = false;
-        int index;
-        for (index = 0; enumRecipes.hasMoreElements(); ++index)
+        // Look up the selected recipe's row, and select the element
+        int index = listModel.indexOf(SAT.recipeViewer.currentRecipe.getId());
+        if (index >= 0)
         {
-            // Check if this element's string matches the current recipe's title
-            if (((String)enumRecipes.nextElement()).equals(SAT.recipeViewer.currentRecipe.getTitle()))
+            list.setSelectedIndex(index);
+        }
+    }
+
+    /*
+     * Get the recipes listed near a recipe
+     *
+     * @param id        ID of the recipe
+     * @param distance  How many rows either side to include
+     *
+     * @return the recipes, nearest first (empty if the recipe isn't listed)
+     */
+    public ArrayList<Recipe> getNeighbours(int id, int distance)
+    {
+        ArrayList<Recipe> neighbours = new ArrayList<Recipe>(distance * 2);
+        int index = listModel.indexOf(id);
+        if (index < 0)
+        {
+            return neighbours;
+        }
+        for (int d = 1; d <= distance; ++d)
+        {
+            if (index + d < listModel.getSize())
+            {
+                neighbours.add(listModel.getRecipeAt(index + d));
+            }
+            if (index - d >= 0)
             {
-                // Found the index
-                found = true;
-                break;
+                neighbours.add(listModel.getRecipeAt(index - d));
             }
         }
+        return neighbours;
+    }
 
-        // Set the selected index on the list
-        if (found)
+    /*
+     * Change the order recipes are listed in
+     *
+     * @param order  New order
+     */
+    public void setOrder(RecipeOrdering.Order order)
+    {
+        this.order = order;
+        refresh();
+    }
+
+    @Override
+    public void recipesChanged(List<RecipeStoreEvent> events)
+    {
+        if (events.size() > 1)
         {
-            list.setSelectedIndex(index);
+            // Many changes at once (e.g. an import); one full refresh is
+            // cheaper than a delta per recipe
+            refresh();
+            return;
+        }
+
+        // Apply the single change
+        RecipeStoreEvent e = events.get(0);
+        if (e.getOldRecipe() != null)
+        {
+            recipeRemoved(e.getOldRecipe().getId());
+        }
+        if (e.getNewRecipe() != null)
+        {
+            recipeAdded(e.getNewRecipe());
+        }
+
+        // Rows may have moved under the selection
+        if (SAT.recipeViewer != null && SAT.recipeViewer.currentRecipe != null)
+        {
+            refreshSelection();
+        }
+    }
+
+    /*
+     * Add a newly saved recipe to the list
+     *
+     * @param recipe  Recipe that was added
+     */
+    public void recipeAdded(Recipe recipe)
+    {
+        switch (order)
+        {
+        case TITLE:
+            // Insert at its place in title order
+            listModel.insertRecipe(SAT.engine.getOrdering().indexOfTitle(recipe), recipe);
+            SAT.sizeListCells(list);
+            break;
+        case RECENTLY_EDITED:
+            // Newly saved, so it goes first
+            listModel.insertRecipe(0, recipe);
+            SAT.sizeListCells(list);
+            break;
+        default:
+            // Position depends on the other untouched recipes
+            refresh();
+            break;
+        }
+    }
+
+    /*
+     * Move a recipe that was just viewed to the top of the list, if the list
+     * is in recently viewed order
+     *
+     * @param recipe  Recipe that was viewed
+     */
+    public void recipeViewed(Recipe recipe)
+    {
+        if (order != RecipeOrdering.Order.RECENTLY_VIEWED)
+        {
+            return;
+        }
+
+        int index = listModel.indexOf(recipe.getId());
+        if (index > 0)
+        {
+            listModel.moveRow(index, 0);
+        }
+    }
+
+    /*
+     * Remove a recipe from the list
+     *
+     * @param id  ID of the recipe that was removed
+     */
+    public void recipeRemoved(int id)
+    {
+        int index = listModel.indexOf(id);
+        if (index >= 0)
+        {
+            listModel.removeRow(index);
         }
     }
 }
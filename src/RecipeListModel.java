@@ -0,0 +1,272 @@
+import java.util.Arrays;
+import javax.swing.AbstractListModel;
+
+/*
+ * RecipeListModel.java
+ *
+ * List model showing recipe titles.  Rather than copying every title into
+ * the model, rows are stored as a primitive array of ordinals into a recipe
+ * array, and titles are only looked up when a row is painted.
+ *
+ * Replacing the contents fires a single change event, so refreshing a list
+ * of any size only causes one relayout.  Single recipes can also be inserted
+ * and removed without touching the rest of the list.
+ *
+ * The model keeps a table of recipe ID to row, so finding the row of a
+ * recipe (as selecting and viewing do) takes constant time instead of a
+ * search of the list.  The table is built the first time it is needed after
+ * the contents are replaced.  Inserting or removing a row moves every later
+ * row, so it costs O(rows after it): the rows array is shifted, and the
+ * table entries of the moved rows are rewritten.
+ */
+public class RecipeListModel extends AbstractListModel<String>
+{
+    // Recipes that rows point into
+    private Recipe[] recipes = new Recipe[0];
+
+    // Number of recipes in the recipes array
+    private int recipeCount = 0;
+
+    // Whether the recipes array was given to us (and so must be copied
+    // before we add to it)
+    private boolean recipesShared = false;
+
+    // Ordinal of the recipe shown in each row
+    private int[] rows = new int[0];
+
+    // Whether the rows array was given to us (and so must be copied before
+    // we modify it)
+    private boolean rowsShared = false;
+
+    // Number of rows
+    private int size = 0;
+
+    // Row of each recipe, indexed by recipe ID (-1 where a recipe isn't
+    // shown), or null if it hasn't been built yet.  IDs are dense, so a plain
+    // array does the job of a map.
+    private int[] rowIndex = null;
+
+    /*
+     * Replace the contents of the list
+     *
+     * @param recipes  Recipes that rows point into.  The array is not
+     *                 modified by the model.
+     * @param rows     Ordinal of the recipe shown in each row, or null to
+     *                 show every recipe in array order.
+     */
+    public void setRecipes(Recipe[] recipes, int[] rows)
+    {
+        int oldSize = size;
+
+        this.recipes = recipes;
+        recipeCount = recipes.length;
+        recipesShared = true;
+
+        rowsShared = rows != null;
+        if (rows == null)
+        {
+            // Show every recipe in order
+            rows = new int[recipes.length];
+            for (int i = 0; i < rows.length; ++i)
+            {
+                rows[i] = i;
+            }
+        }
+        this.rows = rows;
+        size = rows.length;
+
+        // Rows have all changed; rebuild the index when next needed
+        rowIndex = null;
+
+        // One event for the whole refresh
+        int changed = Math.max(oldSize, size);
+        if (changed > 0)
+        {
+            fireContentsChanged(this, 0, changed - 1);
+        }
+    }
+
+    /*
+     * Insert a recipe into the list.  This takes time proportional to the
+     * number of rows after it.
+     *
+     * @param row     Row to insert at
+     * @param recipe  Recipe to insert
+     */
+    public void insertRecipe(int row, Recipe recipe)
+    {
+        // Add the recipe to our recipes array, taking our own copy if the
+        // array is shared
+        if (recipesShared || recipeCount == recipes.length)
+        {
+            Recipe[] newRecipes = new Recipe[Math.max(16, recipeCount * 3 / 2 + 1)];
+            System.arraycopy(recipes, 0, newRecipes, 0, recipeCount);
+            recipes = newRecipes;
+            recipesShared = false;
+        }
+        int ordinal = recipeCount++;
+        recipes[ordinal] = recipe;
+
+        // Make room for the row and insert it
+        ensureOwnRows(size + 1);
+        System.arraycopy(rows, row, rows, row + 1, size - row);
+        rows[row] = ordinal;
+        ++size;
+
+        // Later rows have moved down by one
+        if (rowIndex != null)
+        {
+            reindexFrom(row);
+        }
+
+        fireIntervalAdded(this, row, row);
+    }
+
+    /*
+     * Remove a row from the list.  This takes time proportional to the
+     * number of rows after it.
+     *
+     * @param row  Row to remove
+     */
+    public void removeRow(int row)
+    {
+        int ordinal = rows[row];
+        int id = recipes[ordinal].getId();
+
+        // Let go of the recipe if it was one we inserted (no other row
+        // points at it).  The last one inserted gives its slot back, so
+        // replacing a recipe (remove, then insert) doesn't grow the array.
+        if (!recipesShared)
+        {
+            recipes[ordinal] = null;
+            if (ordinal == recipeCount - 1)
+            {
+                --recipeCount;
+            }
+        }
+
+        ensureOwnRows(size);
+        System.arraycopy(rows, row + 1, rows, row, size - row - 1);
+        --size;
+
+        // Later rows have moved up by one
+        if (rowIndex != null)
+        {
+            rowIndex[id] = -1;
+            reindexFrom(row);
+        }
+
+        fireIntervalRemoved(this, row, row);
+    }
+
+    /*
+     * Move a row to a new position, shifting the rows in between
+     *
+     * @param from  Row to move
+     * @param to    Position to move it to
+     */
+    public void moveRow(int from, int to)
+    {
+        if (from == to)
+        {
+            return;
+        }
+
+        ensureOwnRows(size);
+        int ordinal = rows[from];
+        if (from < to)
+        {
+            System.arraycopy(rows, from + 1, rows, from, to - from);
+        }
+        else
+        {
+            System.arraycopy(rows, to, rows, to + 1, from - to);
+        }
+        rows[to] = ordinal;
+
+        // Only rows between the two positions have moved
+        int first = Math.min(from, to), last = Math.max(from, to);
+        if (rowIndex != null)
+        {
+            for (int i = first; i <= last; ++i)
+            {
+                setRowIndex(getRecipeAt(i).getId(), i);
+            }
+        }
+
+        fireContentsChanged(this, first, last);
+    }
+
+    // Make sure we have our own rows array with room for the given number of
+    // rows
+    private void ensureOwnRows(int capacity)
+    {
+        if (!rowsShared && capacity <= rows.length)
+        {
+            return;
+        }
+        int[] newRows = new int[Math.max(16, Math.max(capacity, size * 3 / 2 + 1))];
+        System.arraycopy(rows, 0, newRows, 0, size);
+        rows = newRows;
+        rowsShared = false;
+    }
+
+    // Update the row index for all rows from the given row onwards
+    private void reindexFrom(int row)
+    {
+        for (int i = row; i < size; ++i)
+        {
+            setRowIndex(getRecipeAt(i).getId(), i);
+        }
+    }
+
+    // Record the row of a recipe ID, growing the table if needed
+    private void setRowIndex(int id, int row)
+    {
+        if (id >= rowIndex.length)
+        {
+            int[] grown = new int[Math.max(id + 1, rowIndex.length * 2)];
+            System.arraycopy(rowIndex, 0, grown, 0, rowIndex.length);
+            Arrays.fill(grown, rowIndex.length, grown.length, -1);
+            rowIndex = grown;
+        }
+        rowIndex[id] = row;
+    }
+
+    /*
+     * Find the row showing a recipe
+     *
+     * @param id  ID of the recipe
+     *
+     * @return the recipe's row, or -1 if it isn't in the list
+     */
+    public int indexOf(int id)
+    {
+        if (rowIndex == null)
+        {
+            rowIndex = new int[Math.max(16, size)];
+            Arrays.fill(rowIndex, -1);
+            reindexFrom(0);
+        }
+
+        return id >= 0 && id < rowIndex.length ? rowIndex[id] : -1;
+    }
+
+    @Override
+    public int getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index)
+    {
+        return getRecipeAt(index).getTitle();
+    }
+
+    // @return the recipe shown in a row
+    public Recipe getRecipeAt(int index)
+    {
+        return recipes[rows[index]];
+    }
+}
@@ -0,0 +1,474 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * RecipeMetrics.java
+ *
+ * Counters and latency histograms for loading, saving, searching, tag
+ * filtering and the viewer's document cache, published over JMX as
+ * SAT:type=RecipeMetrics so they can be watched from JConsole.
+ *
+ * Recording is done on hot paths (every search keystroke), so it never
+ * locks: each measurement is a few atomic increments.  Readers may see a
+ * measurement half-recorded (counted in the total but not yet in a bucket,
+ * say), which is fine for monitoring.
+ */
+public class RecipeMetrics implements RecipeMetricsMBean
+{
+    // Name the metrics are registered under
+    public static final String OBJECT_NAME = "SAT:type=RecipeMetrics";
+
+    // The one set of metrics
+    private static final RecipeMetrics instance = new RecipeMetrics();
+
+    /*
+     * Histogram of non-negative values, in power-of-two buckets: bucket 0
+     * counts zeroes, and bucket b counts values from 2^(b-1) to 2^b - 1.
+     */
+    public static class Histogram
+    {
+        // Enough buckets for any long
+        private static final int BUCKETS = 65;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private volatile long last;
+
+        // Add a value
+        public void record(long value)
+        {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            total.addAndGet(value);
+            last = value;
+
+            long m = max.get();
+            while (value > m && !max.compareAndSet(m, value))
+            {
+                m = max.get();
+            }
+        }
+
+        public long getCount()
+        {
+            return count.get();
+        }
+        public long getTotal()
+        {
+            return total.get();
+        }
+        public long getMax()
+        {
+            return max.get();
+        }
+        public long getLast()
+        {
+            return last;
+        }
+
+        // @return mean of the values, or 0 if there are none
+        public double getMean()
+        {
+            long n = count.get();
+            return n == 0 ? 0 : (double)total.get() / n;
+        }
+
+        /*
+         * Estimate a percentile
+         *
+         * @param percent  Percentile wanted, from 0 to 100
+         *
+         * @return upper bound of the bucket the percentile falls in (but no
+         *         more than the largest value seen), or 0 if there are no
+         *         values
+         */
+        public long getPercentile(double percent)
+        {
+            long n = 0;
+            long[] counts = new long[BUCKETS];
+            for (int b = 0; b < BUCKETS; ++b)
+            {
+                counts[b] = buckets.get(b);
+                n += counts[b];
+            }
+
+            long rank = (long)Math.ceil(n * percent / 100);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; ++b)
+            {
+                seen += counts[b];
+                if (counts[b] > 0 && seen >= rank)
+                {
+                    return Math.min(max.get(), upperBound(b));
+                }
+            }
+            return 0;
+        }
+
+        /*
+         * Describe the non-empty buckets, one per line
+         *
+         * @param scale  Amount to divide bucket bounds by for display
+         * @param unit   Unit of the scaled bounds
+         *
+         * @return lines like "1-2ms: 40"
+         */
+        public String[] describe(double scale, String unit)
+        {
+            int lines = 0;
+            String[] described = new String[BUCKETS];
+            for (int b = 0; b < BUCKETS; ++b)
+            {
+                long n = buckets.get(b);
+                if (n > 0)
+                {
+                    double low = b == 0 ? 0 : (1L << (b - 1)) / scale;
+                    described[lines++] = String.format("%s-%s%s: %d",
+                        format(low), format(upperBound(b) / scale), unit, n);
+                }
+            }
+            String[] result = new String[lines];
+            System.arraycopy(described, 0, result, 0, lines);
+            return result;
+        }
+
+        // Forget every value
+        public void reset()
+        {
+            for (int b = 0; b < BUCKETS; ++b)
+            {
+                buckets.set(b, 0);
+            }
+            count.set(0);
+            total.set(0);
+            max.set(0);
+            last = 0;
+        }
+
+        // @return largest value counted in a bucket
+        private static long upperBound(int bucket)
+        {
+            return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        private static String format(double value)
+        {
+            return value == Math.rint(value) ? String.valueOf((long)value) : String.format("%.3f", value);
+        }
+    }
+
+    // Loading and saving: durations (in microseconds) and file sizes
+    private final Histogram loadTimes = new Histogram();
+    private final Histogram loadBytes = new Histogram();
+    private final Histogram saveTimes = new Histogram();
+    private final Histogram saveBytes = new Histogram();
+    private final AtomicLong saveFailures = new AtomicLong();
+
+    // Searching and tag filtering: latencies (in microseconds) and numbers
+    // of results
+    private final Histogram searchTimes = new Histogram();
+    private final Histogram searchResults = new Histogram();
+    private final Histogram tagFilterTimes = new Histogram();
+
+    // Viewer document cache lookups
+    private final AtomicLong documentCacheHits = new AtomicLong();
+    private final AtomicLong documentCacheMisses = new AtomicLong();
+
+    // Sources of the gauges (null until set)
+    private volatile RecipeStore store;
+    private volatile RecipeDocumentCache documentCache;
+
+    // @return the metrics
+    public static RecipeMetrics getInstance()
+    {
+        return instance;
+    }
+
+    /*
+     * Register the metrics with the platform MBean server.  Failure only
+     * loses the metrics, so it is logged rather than thrown.
+     *
+     * @param store  Store whose size is reported
+     */
+    public static void register(RecipeStore store)
+    {
+        instance.store = store;
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+            {
+                server.registerMBean(instance, name);
+            }
+        }
+        catch (JMException e)
+        {
+            System.err.println("Could not register recipe metrics: " + e);
+        }
+    }
+
+    // Set the document cache whose size is reported
+    public void setDocumentCache(RecipeDocumentCache documentCache)
+    {
+        this.documentCache = documentCache;
+    }
+
+    /*
+     * Record loading the recipes file
+     *
+     * @param nanos  Time taken
+     * @param bytes  Size of the file
+     */
+    public void recordLoad(long nanos, long bytes)
+    {
+        loadTimes.record(nanos / 1000);
+        loadBytes.record(bytes);
+    }
+
+    /*
+     * Record saving the recipes file
+     *
+     * @param nanos  Time taken
+     * @param bytes  Size of the file written
+     */
+    public void recordSave(long nanos, long bytes)
+    {
+        saveTimes.record(nanos / 1000);
+        saveBytes.record(bytes);
+    }
+
+    // Record a save that failed
+    public void recordSaveFailure()
+    {
+        saveFailures.incrementAndGet();
+    }
+
+    /*
+     * Record a text search
+     *
+     * @param nanos    Time taken
+     * @param results  Number of recipes found
+     */
+    public void recordSearch(long nanos, int results)
+    {
+        searchTimes.record(nanos / 1000);
+        searchResults.record(results);
+    }
+
+    // Record a tag filter taking some nanoseconds
+    public void recordTagFilter(long nanos)
+    {
+        tagFilterTimes.record(nanos / 1000);
+    }
+
+    // Record whether the viewer found a document in its cache
+    public void recordDocumentCache(boolean hit)
+    {
+        (hit ? documentCacheHits : documentCacheMisses).incrementAndGet();
+    }
+
+    // @return microseconds as milliseconds
+    private static double millis(double micros)
+    {
+        return micros / 1000;
+    }
+
+    @Override
+    public long getLoadCount()
+    {
+        return loadTimes.getCount();
+    }
+    @Override
+    public double getLoadTimeLastMs()
+    {
+        return millis(loadTimes.getLast());
+    }
+    @Override
+    public double getLoadTimeMeanMs()
+    {
+        return millis(loadTimes.getMean());
+    }
+    @Override
+    public double getLoadTimeMaxMs()
+    {
+        return millis(loadTimes.getMax());
+    }
+    @Override
+    public long getLoadBytesLast()
+    {
+        return loadBytes.getLast();
+    }
+    @Override
+    public long getLoadBytesTotal()
+    {
+        return loadBytes.getTotal();
+    }
+
+    @Override
+    public long getSaveCount()
+    {
+        return saveTimes.getCount();
+    }
+    @Override
+    public long getSaveFailures()
+    {
+        return saveFailures.get();
+    }
+    @Override
+    public double getSaveTimeLastMs()
+    {
+        return millis(saveTimes.getLast());
+    }
+    @Override
+    public double getSaveTimeMeanMs()
+    {
+        return millis(saveTimes.getMean());
+    }
+    @Override
+    public double getSaveTimeMaxMs()
+    {
+        return millis(saveTimes.getMax());
+    }
+    @Override
+    public long getSaveBytesLast()
+    {
+        return saveBytes.getLast();
+    }
+    @Override
+    public long getSaveBytesTotal()
+    {
+        return saveBytes.getTotal();
+    }
+
+    @Override
+    public long getSearchCount()
+    {
+        return searchTimes.getCount();
+    }
+    @Override
+    public double getSearchLatencyMeanMs()
+    {
+        return millis(searchTimes.getMean());
+    }
+    @Override
+    public double getSearchLatencyP50Ms()
+    {
+        return millis(searchTimes.getPercentile(50));
+    }
+    @Override
+    public double getSearchLatencyP99Ms()
+    {
+        return millis(searchTimes.getPercentile(99));
+    }
+    @Override
+    public double getSearchLatencyMaxMs()
+    {
+        return millis(searchTimes.getMax());
+    }
+    @Override
+    public double getSearchResultsMean()
+    {
+        return searchResults.getMean();
+    }
+    @Override
+    public long getSearchResultsP99()
+    {
+        return searchResults.getPercentile(99);
+    }
+    @Override
+    public String[] getSearchLatencyHistogram()
+    {
+        return searchTimes.describe(1000, "ms");
+    }
+
+    @Override
+    public long getTagFilterCount()
+    {
+        return tagFilterTimes.getCount();
+    }
+    @Override
+    public double getTagFilterLatencyMeanMs()
+    {
+        return millis(tagFilterTimes.getMean());
+    }
+    @Override
+    public double getTagFilterLatencyP50Ms()
+    {
+        return millis(tagFilterTimes.getPercentile(50));
+    }
+    @Override
+    public double getTagFilterLatencyP99Ms()
+    {
+        return millis(tagFilterTimes.getPercentile(99));
+    }
+    @Override
+    public double getTagFilterLatencyMaxMs()
+    {
+        return millis(tagFilterTimes.getMax());
+    }
+    @Override
+    public String[] getTagFilterLatencyHistogram()
+    {
+        return tagFilterTimes.describe(1000, "ms");
+    }
+
+    @Override
+    public long getDocumentCacheHits()
+    {
+        return documentCacheHits.get();
+    }
+    @Override
+    public long getDocumentCacheMisses()
+    {
+        return documentCacheMisses.get();
+    }
+    @Override
+    public double getDocumentCacheHitRate()
+    {
+        long hits = documentCacheHits.get();
+        long lookups = hits + documentCacheMisses.get();
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+    @Override
+    public long getDocumentCacheBytes()
+    {
+        RecipeDocumentCache cache = documentCache;
+        return cache == null ? 0 : cache.getBytes();
+    }
+
+    @Override
+    public int getStoreSize()
+    {
+        RecipeStore s = store;
+        return s == null ? 0 : s.size();
+    }
+    @Override
+    public long getStoreVersion()
+    {
+        RecipeStore s = store;
+        return s == null ? 0 : s.getSnapshot().getVersion();
+    }
+
+    @Override
+    public void reset()
+    {
+        loadTimes.reset();
+        loadBytes.reset();
+        saveTimes.reset();
+        saveBytes.reset();
+        saveFailures.set(0);
+        searchTimes.reset();
+        searchResults.reset();
+        tagFilterTimes.reset();
+        documentCacheHits.set(0);
+        documentCacheMisses.set(0);
+    }
+}
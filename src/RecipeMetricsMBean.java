@@ -0,0 +1,57 @@
+/*
+ * RecipeMetricsMBean.java
+ *
+ * Management interface of RecipeMetrics, as seen from JConsole or any other
+ * JMX client.  Times are in milliseconds.  Percentiles come from power-of-two
+ * histogram buckets, so they are upper bounds within a factor of two.
+ */
+public interface RecipeMetricsMBean
+{
+    // Loading the recipes file
+    long getLoadCount();
+    double getLoadTimeLastMs();
+    double getLoadTimeMeanMs();
+    double getLoadTimeMaxMs();
+    long getLoadBytesLast();
+    long getLoadBytesTotal();
+
+    // Saving the recipes file
+    long getSaveCount();
+    long getSaveFailures();
+    double getSaveTimeLastMs();
+    double getSaveTimeMeanMs();
+    double getSaveTimeMaxMs();
+    long getSaveBytesLast();
+    long getSaveBytesTotal();
+
+    // Text searches
+    long getSearchCount();
+    double getSearchLatencyMeanMs();
+    double getSearchLatencyP50Ms();
+    double getSearchLatencyP99Ms();
+    double getSearchLatencyMaxMs();
+    double getSearchResultsMean();
+    long getSearchResultsP99();
+    String[] getSearchLatencyHistogram();
+
+    // Tag filtering
+    long getTagFilterCount();
+    double getTagFilterLatencyMeanMs();
+    double getTagFilterLatencyP50Ms();
+    double getTagFilterLatencyP99Ms();
+    double getTagFilterLatencyMaxMs();
+    String[] getTagFilterLatencyHistogram();
+
+    // Recipe viewer document cache
+    long getDocumentCacheHits();
+    long getDocumentCacheMisses();
+    double getDocumentCacheHitRate();
+    long getDocumentCacheBytes();
+
+    // Recipe store
+    int getStoreSize();
+    long getStoreVersion();
+
+    // Start counting again from zero
+    void reset();
+}
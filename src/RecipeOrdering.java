@@ -0,0 +1,392 @@
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/*
+ * RecipeOrdering.java
+ *
+ * Keeps the saved recipes in the orders they can be listed in, so that the
+ * recipe lists never need to sort anything themselves.
+ *
+ * Title order is kept as a sorted array using locale-aware collation keys,
+ * which are worked out once per title when a recipe is added.  The
+ * "recently viewed" and "recently edited" orders are kept as recency lists
+ * of the recipes touched this session; untouched recipes follow them in
+ * title order.
+ */
+public class RecipeOrdering implements RecipeStoreListener
+{
+    // Orders that recipes can be listed in
+    public enum Order
+    {
+        TITLE("Title"),
+        RECENTLY_VIEWED("Recently viewed"),
+        RECENTLY_EDITED("Recently edited");
+
+        // Text shown to the user
+        private final String text;
+
+        Order(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public String toString()
+        {
+            return text;
+        }
+    }
+
+    // Collator for the user's locale, used to make the title keys
+    private final Collator collator = Collator.getInstance();
+
+    // Recipes sorted by title, and their collation keys
+    private Recipe[] sorted = new Recipe[16];
+    private CollationKey[] keys = new CollationKey[16];
+    private int size = 0;
+
+    // Collation key of each recipe's title, indexed by recipe ID, so we never
+    // compute one twice
+    private CollationKey[] keysById = new CollationKey[16];
+
+    // Number of changes made to the title order so far
+    private long version = 0;
+
+    // Longest title added so far (used to size the recipe lists' cells).
+    // Not shortened when recipes are removed, so cells may stay a little
+    // wider than needed.
+    private String longestTitle = "";
+
+    // Recipes viewed/edited this session (by ID), least recent first
+    private final LinkedHashMap<Integer, Recipe> viewed = new LinkedHashMap<Integer, Recipe>();
+    private final LinkedHashMap<Integer, Recipe> edited = new LinkedHashMap<Integer, Recipe>();
+
+    /*
+     * Add a recipe which was loaded from disk
+     *
+     * @param recipe  The loaded recipe
+     */
+    public void load(Recipe recipe)
+    {
+        CollationKey key = putKey(recipe);
+        int pos = -search(key, recipe.getTitle()) - 1;
+        if (pos < 0)
+        {
+            // Already present
+            return;
+        }
+
+        // Make room if we need to
+        if (size == sorted.length)
+        {
+            Recipe[] newSorted = new Recipe[size * 2];
+            CollationKey[] newKeys = new CollationKey[size * 2];
+            System.arraycopy(sorted, 0, newSorted, 0, size);
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            sorted = newSorted;
+            keys = newKeys;
+        }
+
+        // Shift later recipes along and insert
+        System.arraycopy(sorted, pos, sorted, pos + 1, size - pos);
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        sorted[pos] = recipe;
+        keys[pos] = key;
+        ++size;
+        ++version;
+    }
+
+    /*
+     * Add many recipes which were loaded from disk.  They are sorted once
+     * and merged into the title order, rather than inserted one at a time
+     * (which shifts the arrays along for every recipe).  Recipes already in
+     * the ordering are skipped.
+     *
+     * @param recipes  The loaded recipes
+     */
+    public void loadAll(Collection<Recipe> recipes)
+    {
+        Recipe[] loaded = new Recipe[recipes.size()];
+        int count = 0;
+        for (Recipe r : recipes)
+        {
+            if (getKey(r.getId()) == null)
+            {
+                putKey(r);
+                loaded[count++] = r;
+            }
+        }
+        if (count == 0)
+        {
+            return;
+        }
+        Arrays.sort(loaded, 0, count, new Comparator<Recipe>() {
+            @Override
+            public int compare(Recipe a, Recipe b)
+            {
+                return RecipeOrdering.this.compare(a, b);
+            }
+        });
+
+        // Merge the existing recipes and the loaded ones
+        int capacity = Math.max(sorted.length, size + count);
+        Recipe[] newSorted = new Recipe[capacity];
+        CollationKey[] newKeys = new CollationKey[capacity];
+        int i = 0, j = 0, k = 0;
+        while (i < size || j < count)
+        {
+            if (j == count || (i < size && compare(sorted[i], loaded[j]) <= 0))
+            {
+                newKeys[k] = keys[i];
+                newSorted[k++] = sorted[i++];
+            }
+            else
+            {
+                newKeys[k] = keysById[loaded[j].getId()];
+                newSorted[k++] = loaded[j++];
+            }
+        }
+        sorted = newSorted;
+        keys = newKeys;
+        size = k;
+        ++version;
+    }
+
+    /*
+     * Add a recipe which was just saved by the user.  It is also moved to
+     * the front of the recently edited order.
+     *
+     * @param recipe  The saved recipe
+     */
+    public void add(Recipe recipe)
+    {
+        load(recipe);
+        touch(edited, recipe);
+    }
+
+    /*
+     * Remove a recipe from all orders
+     *
+     * @param recipe  The removed recipe
+     */
+    public void remove(Recipe recipe)
+    {
+        int id = recipe.getId();
+        CollationKey key = getKey(id);
+        if (key != null)
+        {
+            keysById[id] = null;
+            int pos = search(key, recipe.getTitle());
+            if (pos >= 0)
+            {
+                System.arraycopy(sorted, pos + 1, sorted, pos, size - pos - 1);
+                System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+                --size;
+                sorted[size] = null;
+                keys[size] = null;
+                ++version;
+            }
+        }
+
+        viewed.remove(id);
+        edited.remove(id);
+    }
+
+    @Override
+    public void recipesChanged(List<RecipeStoreEvent> events)
+    {
+        for (RecipeStoreEvent e : events)
+        {
+            if (e.getOldRecipe() != null)
+            {
+                remove(e.getOldRecipe());
+            }
+            if (e.getNewRecipe() != null)
+            {
+                add(e.getNewRecipe());
+            }
+        }
+    }
+
+    /*
+     * Move a recipe to the front of the recently viewed order
+     *
+     * @param recipe  The viewed recipe
+     */
+    public void recipeViewed(Recipe recipe)
+    {
+        if (getKey(recipe.getId()) != null)
+        {
+            touch(viewed, recipe);
+        }
+    }
+
+    // Move a recipe to the most recent end of a recency list
+    private static void touch(LinkedHashMap<Integer, Recipe> recency, Recipe recipe)
+    {
+        recency.remove(recipe.getId());
+        recency.put(recipe.getId(), recipe);
+    }
+
+    /*
+     * Binary search for a title in the sorted array
+     *
+     * @param key    Collation key of the title
+     * @param title  The title (used to break ties between equal keys)
+     *
+     * @return index of the title, or (-(insertion point) - 1) if not present
+     */
+    private int search(CollationKey key, String title)
+    {
+        int low = 0, high = size - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = keys[mid].compareTo(key);
+            if (cmp == 0)
+            {
+                cmp = sorted[mid].getTitle().compareTo(title);
+            }
+
+            if (cmp < 0)
+            {
+                low = mid + 1;
+            }
+            else if (cmp > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /*
+     * Compare two recipes by title order
+     *
+     * @param a  First recipe
+     * @param b  Second recipe
+     *
+     * @return negative, zero or positive if a comes before, at the same
+     *         place as, or after b
+     */
+    public int compare(Recipe a, Recipe b)
+    {
+        int cmp = getKey(a).compareTo(getKey(b));
+        return cmp != 0 ? cmp : a.getTitle().compareTo(b.getTitle());
+    }
+
+    // Work out and store the collation key of a recipe's title
+    // @return the key
+    private CollationKey putKey(Recipe recipe)
+    {
+        String title = recipe.getTitle();
+        if (title.length() > longestTitle.length())
+        {
+            longestTitle = title;
+        }
+
+        CollationKey key = collator.getCollationKey(title);
+        if (recipe.getId() >= keysById.length)
+        {
+            CollationKey[] grown = new CollationKey[Math.max(recipe.getId() + 1, keysById.length * 2)];
+            System.arraycopy(keysById, 0, grown, 0, keysById.length);
+            keysById = grown;
+        }
+        keysById[recipe.getId()] = key;
+        return key;
+    }
+
+    // @return the stored collation key for a recipe ID, or null if none
+    private CollationKey getKey(int id)
+    {
+        return id >= 0 && id < keysById.length ? keysById[id] : null;
+    }
+
+    // @return the collation key for a recipe's title
+    private CollationKey getKey(Recipe recipe)
+    {
+        CollationKey key = getKey(recipe.getId());
+        return key != null ? key : collator.getCollationKey(recipe.getTitle());
+    }
+
+    /*
+     * Find where a recipe sits in title order
+     *
+     * @param recipe  Recipe to find
+     *
+     * @return position of the recipe, or -1 if it isn't present
+     */
+    public int indexOfTitle(Recipe recipe)
+    {
+        CollationKey key = getKey(recipe.getId());
+        if (key == null)
+        {
+            return -1;
+        }
+        int pos = search(key, recipe.getTitle());
+        return pos < 0 ? -1 : pos;
+    }
+
+    /*
+     * Get all recipes in one of the orders
+     *
+     * @param order  Order to list recipes in
+     *
+     * @return a new array of the recipes in that order
+     */
+    public Recipe[] toArray(Order order)
+    {
+        Recipe[] result = new Recipe[size];
+        if (order == Order.TITLE)
+        {
+            System.arraycopy(sorted, 0, result, 0, size);
+            return result;
+        }
+
+        // Touched recipes first, most recent first
+        LinkedHashMap<Integer, Recipe> recency = order == Order.RECENTLY_VIEWED ? viewed : edited;
+        int i = recency.size();
+        for (Recipe r : recency.values())
+        {
+            result[--i] = r;
+        }
+
+        // Then the rest in title order
+        i = recency.size();
+        for (int j = 0; j < size; ++j)
+        {
+            if (!recency.containsKey(sorted[j].getId()))
+            {
+                result[i++] = sorted[j];
+            }
+        }
+        return result;
+    }
+
+    // @return a number which changes whenever the title order does
+    public long getVersion()
+    {
+        return version;
+    }
+
+    // @return the longest title added
+    public String getLongestTitle()
+    {
+        return longestTitle;
+    }
+
+    // @return number of recipes
+    public int getSize()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * RecipePrefetcher.java
+ *
+ * Builds the viewer documents of recipes the user is likely to look at next
+ * (the rows next to the one being viewed, and the top search results)
+ * before they are asked for, so that moving to them is a cache hit.
+ *
+ * Documents are built on low-priority daemon threads, so prefetching only
+ * uses time the rest of the program doesn't want.  Each call to prefetch()
+ * replaces the previous batch: work not yet started is cancelled, and
+ * recipes already cached are skipped.  The documents go into the viewer's
+ * document cache, so they are bounded by that cache's memory budget, and
+ * each batch stops once it has added its own smaller budget of documents,
+ * so prefetching can't push out everything the user actually viewed.
+ */
+public class RecipePrefetcher
+{
+    // Cache documents are built into
+    private final RecipeDocumentCache cache;
+
+    // Most bytes a batch may add to the cache
+    private final long batchBudget;
+
+    // Threads documents are built on
+    private final ExecutorService executor;
+
+    // Work queued for the current batch
+    private final ArrayList<Future<?>> queued = new ArrayList<Future<?>>();
+
+    // Number of the current batch; work from older batches stops as soon
+    // as it sees this has moved on
+    private volatile long batch = 0;
+
+    /*
+     * Initialise a new prefetcher
+     *
+     * @param cache        Cache to build documents into
+     * @param batchBudget  Most bytes of documents a batch may add to the
+     *                     cache
+     * @param threads      Number of threads to build documents on
+     */
+    public RecipePrefetcher(RecipeDocumentCache cache, long batchBudget, int threads)
+    {
+        this.cache = cache;
+        this.batchBudget = batchBudget;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Recipe prefetcher");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /*
+     * Start prefetching a batch of recipes, cancelling the previous batch.
+     * Call from the event dispatch thread.
+     *
+     * @param recipes  Stored recipes to prefetch, most likely first.  Each is
+     *                 built at its own number of servings.
+     */
+    public void prefetch(Collection<Recipe> recipes)
+    {
+        cancel();
+
+        final long thisBatch = batch;
+        final long startBytes = cache.getBytes();
+        for (final Recipe recipe : recipes)
+        {
+            if (recipe == null || cache.find(recipe, recipe.getServings()) != null)
+            {
+                continue;
+            }
+
+            queued.add(executor.submit(new Runnable() {
+                @Override
+                public void run()
+                {
+                    // Skip the work if the user has moved on, or the batch
+                    // has used its share of the cache
+                    if (batch != thisBatch || cache.getBytes() - startBytes > batchBudget)
+                    {
+                        return;
+                    }
+                    cache.get(recipe, recipe.getServings());
+                }
+            }));
+        }
+    }
+
+    /*
+     * Cancel the current batch.  Documents already being built are finished
+     * (and cached), but nothing else is started.
+     */
+    public void cancel()
+    {
+        ++batch;
+        for (Future<?> f : queued)
+        {
+            f.cancel(false);
+        }
+        queued.clear();
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Collection;
+import java.util.HashSet;
+
+/*
+ * RecipeSearch.java
+ *
+ * One search over a store's recipes: a tag filter and a text query, and the
+ * recipes passing both, in title order.  This is the search window's logic
+ * without the window, so batch tools and benchmarks can drive it too.
+ *
+ * The search keeps a title-ordered copy of the recipes in a search engine,
+ * and only copies them again when the title order has changed since (which
+ * it tells from the ordering's version).  The store's snapshot version
+ * isn't used, as it changes before the ordering hears about a change, and a
+ * search made from a tag registry listener in between would miss it.
+ * Filtering by tags is only redone when the tags or the recipes change, so
+ * typing a query just narrows down the tag-filtered recipes.
+ *
+ * A search is used from the thread that changes the store.
+ */
+public class RecipeSearch
+{
+    // Store being searched
+    private final RecipeStore store;
+
+    // Engine which performs tag filtering and text searching
+    private final RecipeSearchEngine engine = new RecipeSearchEngine();
+
+    // Version of the ordering the engine's recipes came from
+    private long version = -1;
+
+    // Selected tags (null to not filter by tags at all), and whether
+    // untagged recipes pass the filter
+    private HashSet<String> tags = null;
+    private boolean includeUntagged = false;
+
+    // Lowercase search query
+    private String query = "";
+
+    // Ordinals of the tag-filtered recipes in the engine
+    private int[] tagFiltered = new int[0];
+
+    /*
+     * Initialise a new search, not filtering by tags, with an empty query
+     *
+     * @param store  Store to search
+     */
+    public RecipeSearch(RecipeStore store)
+    {
+        this.store = store;
+    }
+
+    /*
+     * Set the tag filter
+     *
+     * @param tags             Tags to filter by; recipes with any of them
+     *                         pass
+     * @param includeUntagged  Whether recipes without tags pass
+     */
+    public void setTags(Collection<String> tags, boolean includeUntagged)
+    {
+        this.tags = new HashSet<String>(tags);
+        this.includeUntagged = includeUntagged;
+        update();
+        applyTagFilter();
+    }
+
+    // Stop filtering by tags
+    public void clearTags()
+    {
+        tags = null;
+        update();
+        applyTagFilter();
+    }
+
+    // Set the search query (matched case-insensitively)
+    public void setQuery(String query)
+    {
+        this.query = query.toLowerCase();
+    }
+
+    // @return the lowercase search query
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /*
+     * Find the recipes passing the tag filter and query
+     *
+     * @return ordinals of the recipes found, in title order.  Look them up
+     *         in getRecipes().
+     */
+    public int[] search()
+    {
+        // Bring the engine up to date first if recipes have changed
+        if (update())
+        {
+            applyTagFilter();
+        }
+
+        // Narrow the tag-filtered recipes down to those matching the query
+        Object event = RecipeEvents.getInstance().beginSearch();
+        int[] results = engine.search(tagFiltered, query);
+        RecipeEvents.getInstance().endSearch(event, query.length(), tagFiltered.length, results.length);
+        return results;
+    }
+
+    // @return the recipes searched, indexed by ordinal (replaced, not
+    //         modified, when the recipes change)
+    public Recipe[] getRecipes()
+    {
+        return engine.getRecipes();
+    }
+
+    /*
+     * Check whether a recipe would be found by the search, without
+     * searching
+     *
+     * @param recipe  Recipe to check
+     *
+     * @return true if it passes the tag filter and query
+     */
+    public boolean matches(Recipe recipe)
+    {
+        if (tags == null)
+        {
+            return engine.matches(recipe, query);
+        }
+        return engine.matches(recipe, tags, includeUntagged, query);
+    }
+
+    /*
+     * Give the engine the current recipes, if the title order has changed
+     * since it was last updated
+     *
+     * @return true if the engine was updated (and so any ordinals from it
+     *         are now stale)
+     */
+    private boolean update()
+    {
+        long current = store.getOrdering().getVersion();
+        if (current == version)
+        {
+            return false;
+        }
+
+        // Recipes are given in title order, so results come out sorted
+        engine.setRecipes(store.getOrdering().toArray(RecipeOrdering.Order.TITLE));
+        version = current;
+        return true;
+    }
+
+    // Find the recipes passing the tag filter
+    private void applyTagFilter()
+    {
+        if (tags == null)
+        {
+            tagFiltered = new int[engine.getSize()];
+            for (int i = 0; i < tagFiltered.length; ++i)
+            {
+                tagFiltered[i] = i;
+            }
+            return;
+        }
+
+        Object event = RecipeEvents.getInstance().beginTagFilter();
+        tagFiltered = engine.filterByTags(tags, includeUntagged);
+        RecipeEvents.getInstance().endTagFilter(event, tags.size(), includeUntagged,
+            engine.getSize(), tagFiltered.length);
+    }
+}
@@ -3,24 +3,33 @@ import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.event.*;
-import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 public class RecipeSearchComponent extends JPanel
+    implements TagRegistry.Listener, RecipeStoreListener
 {
     private final JFrame frame;
 
-    // List of all recipe tags the user has
-    private HashSet<String> allTags;
-
-    // Tag-filtered list of recipes
-    private ArrayList<String> tagFilteredRecipes;
+    // The search being shown, which does the tag filtering and text
+    // searching
+    private final RecipeSearch search = SAT.engine.newSearch();
 
     // List models
-    private DefaultListModel<String> recipeListModel, tagsListModel;
+    private RecipeListModel recipeListModel;
+    private TagsListModel tagsListModel;
+
+    // Recipe list component
+    private final JList<String> recipeList;
 
-    // Recipe search query
-    private String searchQuery = "";
+    // Tags list component
+    private final JList<String> tagsList;
+
+    // Number of top results to prefetch viewer documents for
+    private static final int PREFETCH_RESULTS = 4;
 
     // Text to display for 'untagged' option in tags list
     private static final String UNTAGGED_TAG_NAME = "(untagged)";
@@ -58,9 +67,9 @@ public class RecipeSearchComponent extends JPanel
 
         // Add recipe list to the left panel with a scrollpane
         leftPanel.add(new JLabel("Recipes:"), BorderLayout.NORTH);
-        recipeListModel = new DefaultListModel<String>();
-        final JList<String> recipeList = new JList<String>(recipeListModel);
-        recipeList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        recipeListModel = new RecipeListModel();
+        recipeList = new JList<String>(recipeListModel);
+        recipeList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         recipeList.setDragEnabled(false);
         JScrollPane leftScrollPane = new JScrollPane(recipeList);
         leftScrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
@@ -69,7 +78,7 @@ public class RecipeSearchComponent extends JPanel
         leftPanel.setPreferredSize(new Dimension(500, 100));
 
         // Sub controls for recipes panel
-        final JButton btnView;
+        final JButton btnView, btnShopping;
         {
             JPanel ctrlsPanel = new JPanel(new GridLayout(1, 3));
             leftPanel.add(ctrlsPanel, BorderLayout.SOUTH);
@@ -85,23 +94,42 @@ public class RecipeSearchComponent extends JPanel
                 public void actionPerformed(ActionEvent e)
                 {
                     // View the selected recipe.
-                    String selected = (String)recipeList.getSelectedValue();
-                    if (selected != null)
+                    int selected = recipeList.getSelectedIndex();
+                    if (selected >= 0)
                     {
                         // Focus the main window
                         SAT.focusMainWindow();
 
                         // Display the selected recipe in the recipe viewer
-                        SAT.viewRecipe(selected);
+                        SAT.viewRecipe(recipeListModel.getRecipeAt(selected).getId());
                     }
                 }
             });
 
-            // By default set the view button to disabled
-            btnView.setEnabled(false);
+            // 'Shopping list' button, merging the ingredients of all the
+            // selected recipes
+            btnShopping = new JButton("Shopping list");
+            ctrlsPanel.add(btnShopping);
+            btnShopping.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e)
+                {
+                    int[] selected = recipeList.getSelectedIndices();
+                    ArrayList<Recipe> recipes = new ArrayList<Recipe>(selected.length);
+                    for (int index : selected)
+                    {
+                        recipes.add(recipeListModel.getRecipeAt(index));
+                    }
+                    if (!recipes.isEmpty())
+                    {
+                        new ShoppingListDialog(frame, recipes).setVisible(true);
+                    }
+                }
+            });
 
-            // Second spacer (right)
-            ctrlsPanel.add(Box.createRigidArea(new Dimension(16, 0)));
+            // By default set the buttons to disabled
+            btnView.setEnabled(false);
+            btnShopping.setEnabled(false);
         }
 
         // Create right-side panel (tag filter)
@@ -109,8 +137,8 @@ public class RecipeSearchComponent extends JPanel
 
         // Add tag filter list to the right panel with a scrollpane
         rightPanel.add(new JLabel("Tag filter (click to select)"), BorderLayout.NORTH);
-        tagsListModel = new DefaultListModel<String>();
-        final JList<String> tagsList = new JList<String>(tagsListModel);
+        tagsListModel = new TagsListModel();
+        tagsList = new JList<String>(tagsListModel);
         JScrollPane rightScrollPane = new JScrollPane(tagsList);
         rightScrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         rightScrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
@@ -190,8 +218,14 @@ public class RecipeSearchComponent extends JPanel
             controlsPanel.add(Box.createRigidArea(new Dimension(16, 0)));
         }
 
-        // Set up initial values of  tags lists
-        refreshTagsList();
+        // Set up initial values of tags list, and keep it up to date as tags
+        // come and go
+        tagsListModel.setTags(SAT.engine.getTagRegistry().getTags());
+        SAT.engine.getTagRegistry().addListener(this);
+
+        // Nothing is listed until the tags are selected below; keep up to
+        // date with changes to the recipes from then on
+        SAT.engine.addListener(this);
 
         // Set the selection model for the tag list
         tagsList.setSelectionModel(new TagsListSelectionModel());
@@ -209,7 +243,7 @@ public class RecipeSearchComponent extends JPanel
 
                 // Get the tags that are selected
                 int[] selectedIndices = tagsList.getSelectedIndices();
-                ArrayList<String> selectedTags = new ArrayList<String>(selectedIndices.length);
+                HashSet<String> selectedTags = new HashSet<String>(selectedIndices.length);
                 for (int index : selectedIndices)
                 {
                     // For some reason the selected indices always includes an
@@ -221,9 +255,9 @@ public class RecipeSearchComponent extends JPanel
                     }
 
                     // Get the tag
-                    String tag = (String)tagsListModel.get(index);
+                    String tag = tagsListModel.getTagAt(index);
 
-                    if (tag.equals(UNTAGGED_TAG_NAME))
+                    if (tag == null)
                     {
                         // Allow untagged recipes to show
                         showUntagged = true;
@@ -236,37 +270,7 @@ public class RecipeSearchComponent extends JPanel
                 }
 
                 // Refresh recipe list to only include recipes that have selected tags on them
-
-                // Initialise filtered list
-                tagFilteredRecipes = new ArrayList<String>(SAT.savedRecipes.size());
-
-                // Iterate over all the recipes we have
-                for (Recipe recipe : SAT.savedRecipes.values())
-                {
-                    // Add untagged recipes if user selected untagged option
-                    if (!recipe.hasTags() && showUntagged)
-                    {
-                        tagFilteredRecipes.add(recipe.getTitle());
-                        continue;
-                    }
-
-                    // Check if the recipe has one of the selected tags
-                    for (String tag : recipe.getTags())
-                    {
-                        if (!selectedTags.contains(tag))
-                        {
-                            // Doesn't have a tag; move to next tag
-                            continue;
-                        }
-
-                        // Recipe has a tag--add to the list and move to
-                        // next recipe
-                        tagFilteredRecipes.add(recipe.getTitle());
-                        break;
-                    }
-                }
-
-                // Refresh the recipe list
+                search.setTags(selectedTags, showUntagged);
                 refreshRecipeList();
             }
         });
@@ -279,7 +283,11 @@ public class RecipeSearchComponent extends JPanel
             @Override
             public void valueChanged(ListSelectionEvent e)
             {
-                btnView.setEnabled(recipeList.getSelectedIndex() > -1);
+                // Only one recipe can be viewed, but any number can go on
+                // a shopping list
+                int count = recipeList.getSelectedIndices().length;
+                btnView.setEnabled(count == 1);
+                btnShopping.setEnabled(count > 0);
             }
         });
 
@@ -294,14 +302,14 @@ public class RecipeSearchComponent extends JPanel
                     return;
                 }
 
-                String selected = (String)recipeList.getSelectedValue();
-                if (selected != null)
+                int selected = recipeList.getSelectedIndex();
+                if (selected >= 0)
                 {
                     // Focus the main window
                     SAT.focusMainWindow();
 
                     // Display the selected recipe in the recipe viewer
-                    SAT.viewRecipe(selected);
+                    SAT.viewRecipe(recipeListModel.getRecipeAt(selected).getId());
                 }
             }
         });
@@ -318,10 +326,9 @@ public class RecipeSearchComponent extends JPanel
             // Handle field changes
             protected void fieldChanged()
             {
-                // Update search query
-                // Bug fix: force lowercase on the search query so that
-                //          comparisons only occur in lowercase
-                searchQuery = searchField.getText().toLowerCase();
+                // Update search query (the search lowercases it, so that
+                // comparisons only occur in lowercase)
+                search.setQuery(searchField.getText());
 
                 // Refresh the recipe list
                 refreshRecipeList();
@@ -334,60 +341,203 @@ public class RecipeSearchComponent extends JPanel
      */
     public void refreshRecipeList()
     {
-        // Iterate over all the filtered recipes and add it to the recipe list
-        recipeListModel.clear();
-        for (String recipeTitle : tagFilteredRecipes)
+        int[] results = search.search();
+
+        // Show the results in the recipe list, replacing the old ones
+        recipeList.clearSelection();
+        recipeListModel.setRecipes(search.getRecipes(), results);
+        SAT.sizeListCells(recipeList);
+
+        // The top results are the ones most likely to be viewed next
+        if (SAT.recipeViewer != null)
+        {
+            SAT.recipeViewer.prefetch(getTopResults(PREFETCH_RESULTS));
+        }
+    }
+
+    /*
+     * Get the first few recipes in the results
+     *
+     * @param count  Most recipes to get
+     *
+     * @return the recipes, in the order they are listed
+     */
+    public ArrayList<Recipe> getTopResults(int count)
+    {
+        count = Math.min(count, recipeListModel.getSize());
+        ArrayList<Recipe> top = new ArrayList<Recipe>(count);
+        for (int i = 0; i < count; ++i)
+        {
+            top.add(recipeListModel.getRecipeAt(i));
+        }
+        return top;
+    }
+
+    /*
+     * Searches again after recipes were added, removed or changed, and
+     * refreshes the recipe list.  The tag list itself is kept up to date
+     * through the tag registry.
+     */
+    public void refreshRecipes()
+    {
+        refreshRecipeList();
+    }
+
+    @Override
+    public void recipesChanged(List<RecipeStoreEvent> events)
+    {
+        if (events.size() > 1)
         {
-            Recipe recipe = SAT.savedRecipes.get(recipeTitle);
+            // Many changes at once (e.g. an import); just search again
+            refreshRecipes();
+            return;
+        }
+
+        // The search brings its copy of the recipes up to date when it is
+        // next needed (when the query or tag filter changes)
 
-            // Just add the recipe if there is no search query
-            if (searchQuery.length() <= 0)
+        // Apply the single change to the results directly
+        RecipeStoreEvent e = events.get(0);
+        if (e.getOldRecipe() != null)
+        {
+            int index = recipeListModel.indexOf(e.getOldRecipe().getId());
+            if (index >= 0)
             {
-                recipeListModel.addElement(recipeTitle);
-                continue;
+                recipeListModel.removeRow(index);
             }
-
-            // Check if title or description contains the search query
-            if (recipeTitle.toLowerCase().contains(searchQuery) ||
-                recipe.getDescription().toLowerCase().contains(searchQuery))
+        }
+        Recipe added = e.getNewRecipe();
+        if (added != null && search.matches(added))
+        {
+            // Find the new recipe's place in the (title-ordered) results
+            RecipeOrdering ordering = SAT.engine.getOrdering();
+            int low = 0, high = recipeListModel.getSize();
+            while (low < high)
             {
-                // Add this element
-                recipeListModel.addElement(recipeTitle);
+                int mid = (low + high) >>> 1;
+                if (ordering.compare(recipeListModel.getRecipeAt(mid), added) < 0)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
             }
+            recipeListModel.insertRecipe(low, added);
+            SAT.sizeListCells(recipeList);
         }
     }
 
-    /*
-     * Updates the tags list
-     */
-    public void refreshTagsList()
+    @Override
+    public void tagAdded(String tag)
     {
-        // Tags list:
-        // First we iterate over all the user's recipes, and search for all
-        // unique tags under the recipes.  We do this with a hashset so we
-        // don't have to waste time checking for uniqueness ourselves
-        allTags = new HashSet<String>(SAT.savedRecipes.size());
-        for (Recipe r : SAT.savedRecipes.values())
+        // Insert the new tag, and select it so that the recipes using it
+        // aren't hidden by the filter
+        int index = tagsListModel.insertTag(tag);
+        if (!tagsList.isSelectedIndex(index))
+        {
+            ((TagsListSelectionModel)tagsList.getSelectionModel()).addSelectionInterval(index, index);
+        }
+    }
+
+    @Override
+    public void tagRemoved(String tag)
+    {
+        tagsListModel.removeTag(tag);
+    }
+
+    @Override
+    public void tagCountChanged(String tag, int count)
+    {
+        tagsListModel.tagChanged(tag);
+    }
+
+    // List model for the tags list.
+    // The first row is always the 'untagged' option, followed by the tags in
+    // alphabetical order.  Each row shows how many recipes use the tag.  Rows
+    // are only inserted or removed when a tag comes into or goes out of use.
+    public class TagsListModel extends AbstractListModel<String>
+    {
+        // Sorted list of tags shown after the 'untagged' row
+        private final ArrayList<String> tags = new ArrayList<String>();
+
+        @Override
+        public int getSize()
         {
-            // Iterate over all the tags
-            for (String tag : r.getTags())
+            return tags.size() + 1;
+        }
+
+        @Override
+        public String getElementAt(int index)
+        {
+            if (index == 0)
             {
-                // Add tag to the hashset
-                allTags.add(tag);
+                return String.format("%s (%,d)", UNTAGGED_TAG_NAME, SAT.engine.getTagRegistry().getUntaggedCount());
             }
+
+            String tag = tags.get(index - 1);
+            return String.format("%s (%,d)", tag, SAT.engine.getTagRegistry().getCount(tag));
         }
 
-        // Clear tags list model
-        tagsListModel.clear();
+        // @return the tag at a row, or null for the 'untagged' row
+        public String getTagAt(int index)
+        {
+            return index == 0 ? null : tags.get(index - 1);
+        }
 
-        // Add the 'untagged' element first
-        tagsListModel.addElement(UNTAGGED_TAG_NAME);
+        // Replace all the tags in the list
+        public void setTags(Collection<String> newTags)
+        {
+            int oldSize = getSize();
+            tags.clear();
+            tags.addAll(newTags);
+            Collections.sort(tags);
+            fireContentsChanged(this, 0, Math.max(oldSize, getSize()) - 1);
+        }
 
-        // Add all the tags we found to the list model
-        tagsListModel.ensureCapacity(allTags.size());
-        for (String tag : allTags)
+        // Insert a tag in sorted position
+        // @return the row the tag was inserted at
+        public int insertTag(String tag)
         {
-            tagsListModel.addElement(tag);
+            int pos = Collections.binarySearch(tags, tag);
+            if (pos >= 0)
+            {
+                // Already listed
+                return pos + 1;
+            }
+            pos = -pos - 1;
+            tags.add(pos, tag);
+            fireIntervalAdded(this, pos + 1, pos + 1);
+            return pos + 1;
+        }
+
+        // Remove a tag from the list
+        public void removeTag(String tag)
+        {
+            int pos = Collections.binarySearch(tags, tag);
+            if (pos < 0)
+            {
+                return;
+            }
+            tags.remove(pos);
+            fireIntervalRemoved(this, pos + 1, pos + 1);
+        }
+
+        // Repaint a tag's row after its count changed (null for 'untagged')
+        public void tagChanged(String tag)
+        {
+            int index = 0;
+            if (tag != null)
+            {
+                int pos = Collections.binarySearch(tags, tag);
+                if (pos < 0)
+                {
+                    return;
+                }
+                index = pos + 1;
+            }
+            fireContentsChanged(this, index, index);
         }
     }
 
@@ -406,14 +556,14 @@ public class RecipeSearchComponent extends JPanel
 
         // Select everything
         // We need to pass the model so we can determine the size
-        public void selectAll(DefaultListModel model)
+        public void selectAll(ListModel<?> model)
         {
             // Use the base method as our overridden one doesn't allow this
-            super.setSelectionInterval(0, model.size());
+            super.setSelectionInterval(0, model.getSize());
         }
 
         // Invert the selection
-        public void invertSelection(DefaultListModel model)
+        public void invertSelection(ListModel<?> model)
         {
             // Iterate over all indices
             for (int i = 0; i < model.getSize(); ++i)
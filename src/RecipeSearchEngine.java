@@ -0,0 +1,335 @@
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * RecipeSearchEngine.java
+ *
+ * This class performs the tag filtering and text searching behind the recipe
+ * search window.  Recipes are addressed by their ordinal (index) in the
+ * engine's recipe array, and results are returned as arrays of ordinals.
+ *
+ * Small collections are searched sequentially.  Once the number of recipes
+ * to check passes a threshold, the ordinal space is split into partitions
+ * which are checked in parallel on a fork/join pool.  Partition results are
+ * always merged left-to-right, so results come out in the same order as a
+ * sequential search would give.
+ */
+public class RecipeSearchEngine
+{
+    // Default number of recipes a search must cover before we go parallel.
+    // Can be changed with -Dsat.search.parallelThreshold=<n>
+    public static final int DEFAULT_PARALLEL_THRESHOLD =
+        Integer.getInteger("sat.search.parallelThreshold", 16384);
+
+    // Smallest partition we bother forking off as its own task
+    private static final int MIN_PARTITION_SIZE = 1024;
+
+    // Shared pool used by engines that aren't given their own
+    private static ForkJoinPool sharedPool;
+
+    // Pool that parallel searches run on
+    private final ForkJoinPool pool;
+
+    // Number of recipes a search must cover before it is run in parallel
+    private int parallelThreshold;
+
+    // Recipes being searched, indexed by ordinal
+    private Recipe[] recipes = new Recipe[0];
+
+    /*
+     * Initialise a new search engine using the shared fork/join pool.
+     */
+    public RecipeSearchEngine()
+    {
+        this(getSharedPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /*
+     * Initialise a new search engine
+     *
+     * @param pool               Pool to run parallel searches on
+     * @param parallelThreshold  Number of recipes a search must cover before
+     *                           it is split into parallel partitions.
+     */
+    public RecipeSearchEngine(ForkJoinPool pool, int parallelThreshold)
+    {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /*
+     * @return the pool shared between search engines (created on first use)
+     */
+    private static synchronized ForkJoinPool getSharedPool()
+    {
+        if (sharedPool == null)
+        {
+            sharedPool = new ForkJoinPool();
+        }
+        return sharedPool;
+    }
+
+    /*
+     * Replace the recipes being searched.  Ordinals returned by earlier
+     * searches are invalid after this is called.
+     *
+     * @param recipes  Recipes to search over.  Results are given in the
+     *                 order of this array, which must not be modified
+     *                 afterwards.
+     */
+    public void setRecipes(Recipe[] recipes)
+    {
+        this.recipes = recipes;
+    }
+
+    // @return the recipe with the given ordinal
+    public Recipe getRecipe(int ordinal)
+    {
+        return recipes[ordinal];
+    }
+
+    // @return the recipes being searched, indexed by ordinal.  The array is
+    //         replaced rather than modified when the recipes change.
+    public Recipe[] getRecipes()
+    {
+        return recipes;
+    }
+
+    // @return number of recipes being searched
+    public int getSize()
+    {
+        return recipes.length;
+    }
+
+    // Set number of recipes a search must cover before going parallel
+    public void setParallelThreshold(int parallelThreshold)
+    {
+        this.parallelThreshold = parallelThreshold;
+    }
+    public int getParallelThreshold()
+    {
+        return parallelThreshold;
+    }
+
+    /*
+     * Find all recipes that have at least one of the given tags.
+     *
+     * @param selectedTags     Tags to filter by
+     * @param includeUntagged  Whether recipes without any tags should be
+     *                         included in the results.
+     *
+     * @return ordinals of the matching recipes, in ordinal order
+     */
+    public int[] filterByTags(Set<String> selectedTags, boolean includeUntagged)
+    {
+        long start = System.nanoTime();
+        int[] results = run(new TagPredicate(TagDictionary.toIds(selectedTags, false), includeUntagged),
+            null, recipes.length);
+        RecipeMetrics.getInstance().recordTagFilter(System.nanoTime() - start);
+        return results;
+    }
+
+    /*
+     * Narrow a set of recipes down to those whose title or description
+     * contains the search query.
+     *
+     * @param candidates  Ordinals of the recipes to check
+     * @param query       Lowercase search query.  An empty query matches
+     *                    every candidate.
+     *
+     * @return ordinals of the matching candidates, in candidate order
+     */
+    public int[] search(int[] candidates, String query)
+    {
+        if (query.length() <= 0)
+        {
+            return candidates;
+        }
+        long start = System.nanoTime();
+        int[] results = run(new TextPredicate(query), candidates, candidates.length);
+        RecipeMetrics.getInstance().recordSearch(System.nanoTime() - start, results.length);
+        return results;
+    }
+
+    /*
+     * Check whether a single recipe would be found by a tag filter and
+     * search query.
+     *
+     * @param recipe           Recipe to check
+     * @param selectedTags     Tags to filter by
+     * @param includeUntagged  Whether untagged recipes pass the filter
+     * @param query            Lowercase search query (may be empty)
+     *
+     * @return whether the recipe matches
+     */
+    public boolean matches(Recipe recipe, Set<String> selectedTags, boolean includeUntagged, String query)
+    {
+        return new TagPredicate(TagDictionary.toIds(selectedTags, false), includeUntagged).matches(recipe) &&
+            matches(recipe, query);
+    }
+
+    /*
+     * Check whether a single recipe would be found by a search query
+     *
+     * @param recipe  Recipe to check
+     * @param query   Lowercase search query (may be empty)
+     *
+     * @return whether the recipe matches
+     */
+    public boolean matches(Recipe recipe, String query)
+    {
+        return query.length() <= 0 || new TextPredicate(query).matches(recipe);
+    }
+
+    /*
+     * Evaluate a predicate over either all recipes or a candidate list,
+     * sequentially or in parallel depending on the size.
+     *
+     * @param predicate   Predicate to check recipes against
+     * @param candidates  Candidate ordinals, or null for all ordinals
+     * @param count       Number of ordinals to check
+     *
+     * @return ordinals for which the predicate held
+     */
+    private int[] run(Predicate predicate, int[] candidates, int count)
+    {
+        if (count < parallelThreshold || pool.getParallelism() <= 1)
+        {
+            return scan(predicate, candidates, 0, count);
+        }
+
+        // Split into a few partitions per worker so that uneven partitions
+        // still balance out
+        int partitionSize = Math.max(MIN_PARTITION_SIZE, count / (pool.getParallelism() * 4));
+        return pool.invoke(new PartitionTask(predicate, candidates, 0, count, partitionSize));
+    }
+
+    /*
+     * Sequentially evaluate a predicate over a range of ordinals.
+     *
+     * @param predicate   Predicate to check recipes against
+     * @param candidates  Candidate ordinals, or null for all ordinals
+     * @param from        First index in the range (inclusive)
+     * @param to          Last index in the range (exclusive)
+     *
+     * @return ordinals for which the predicate held
+     */
+    private int[] scan(Predicate predicate, int[] candidates, int from, int to)
+    {
+        int[] matches = new int[to - from];
+        int matchCount = 0;
+        for (int i = from; i < to; ++i)
+        {
+            int ordinal = candidates == null ? i : candidates[i];
+            if (predicate.matches(recipes[ordinal]))
+            {
+                matches[matchCount++] = ordinal;
+            }
+        }
+        return trim(matches, matchCount);
+    }
+
+    // @return array cut down to the given length
+    private static int[] trim(int[] array, int length)
+    {
+        if (array.length == length)
+        {
+            return array;
+        }
+        int[] trimmed = new int[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    // Fork/join task which evaluates a predicate over one partition of the
+    // ordinal space, splitting itself in half until partitions are small.
+    private class PartitionTask extends RecursiveTask<int[]>
+    {
+        private final Predicate predicate;
+        private final int[] candidates;
+        private final int from, to, partitionSize;
+
+        PartitionTask(Predicate predicate, int[] candidates, int from, int to, int partitionSize)
+        {
+            this.predicate = predicate;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.partitionSize = partitionSize;
+        }
+
+        @Override
+        protected int[] compute()
+        {
+            if (to - from <= partitionSize)
+            {
+                return scan(predicate, candidates, from, to);
+            }
+
+            // Fork the left half, compute the right half ourselves
+            int mid = (from + to) >>> 1;
+            PartitionTask left = new PartitionTask(predicate, candidates, from, mid, partitionSize);
+            PartitionTask right = new PartitionTask(predicate, candidates, mid, to, partitionSize);
+            left.fork();
+            int[] rightMatches = right.compute();
+            int[] leftMatches = left.join();
+
+            // Merge left then right so the order matches a sequential scan
+            int[] merged = new int[leftMatches.length + rightMatches.length];
+            System.arraycopy(leftMatches, 0, merged, 0, leftMatches.length);
+            System.arraycopy(rightMatches, 0, merged, leftMatches.length, rightMatches.length);
+            return merged;
+        }
+    }
+
+    // Condition that a recipe is checked against
+    private static abstract class Predicate
+    {
+        abstract boolean matches(Recipe recipe);
+    }
+
+    // Matches recipes having any of a set of tags
+    private static class TagPredicate extends Predicate
+    {
+        private final int[] selectedTags;
+        private final boolean includeUntagged;
+
+        TagPredicate(int[] selectedTags, boolean includeUntagged)
+        {
+            this.selectedTags = selectedTags;
+            this.includeUntagged = includeUntagged;
+        }
+
+        @Override
+        boolean matches(Recipe recipe)
+        {
+            // Untagged recipes are only included if the user asked for them
+            if (!recipe.hasTags())
+            {
+                return includeUntagged;
+            }
+
+            // Check if the recipe has one of the selected tags
+            return recipe.hasAnyTag(selectedTags);
+        }
+    }
+
+    // Matches recipes whose title or description contains a query
+    private static class TextPredicate extends Predicate
+    {
+        private final String query;
+
+        TextPredicate(String query)
+        {
+            this.query = query;
+        }
+
+        @Override
+        boolean matches(Recipe recipe)
+        {
+            return recipe.getTitle().toLowerCase().contains(query) ||
+                recipe.getDescription().toLowerCase().contains(query);
+        }
+    }
+}
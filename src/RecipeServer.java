@@ -0,0 +1,817 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * RecipeServer.java
+ *
+ * Serves the recipes over HTTP on localhost, as JSON, for kitchen displays
+ * and scripts on the same machine.  Started with "SAT --serve [port]"
+ * instead of the window.
+ *
+ *   GET    /recipes?q=&tags=&untagged=&offset=&limit=
+ *                          search: recipes whose title or description
+ *                          contains q, filtered to any of the
+ *                          comma-separated tags (not filtered if tags is
+ *                          left out), in title order
+ *   POST   /recipes        add a recipe
+ *   GET    /recipes/<id>   get a recipe
+ *   PUT    /recipes/<id>   replace a recipe
+ *   DELETE /recipes/<id>   remove a recipe
+ *   GET    /tags           tags in use, with how many recipes use each
+ *
+ * Recipes are written as {"id", "title", "description", "servings",
+ * "ingredients", "procedure", "tags"}; searches list just the ID, title and
+ * tags of each.
+ *
+ * Requests are handled on a bounded pool: virtual threads on JDKs which have
+ * them (with a limit on how many run at once), or otherwise a fixed pool of
+ * -Dsat.serve.threads=<n> threads (default twice the cores) with a queue of
+ * -Dsat.serve.queue=<n> requests.  When everything is busy the server stops
+ * accepting connections until a request finishes, rather than queueing
+ * without limit.
+ *
+ * Reads never wait for writes.  Recipes are read from the store's latest
+ * snapshot, and searches use a read view: a title-ordered copy of the
+ * recipes, and the /tags response, which the writer makes as part of each
+ * change and every request shares until the next one.  Changes are all made
+ * on one thread (the event dispatch thread, as in the program), which keeps
+ * the store's single-writer rule, and the recipes file is saved shortly
+ * after changes stop, and on shutdown.
+ */
+public class RecipeServer
+{
+    // Port served on by default
+    public static final int DEFAULT_PORT = 8080;
+
+    // Most requests handled at once, and most queued for the fixed pool
+    private static final int THREADS =
+        Integer.getInteger("sat.serve.threads", 2 * Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE = Integer.getInteger("sat.serve.queue", 1000);
+
+    // Results listed by a search unless asked for more, and the most it
+    // will list
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+
+    // Largest request body accepted
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    // Delay after a change before the recipes file is saved
+    private static final long SAVE_DELAY_MS = 2000;
+
+    /*
+     * What reads use for one version of the recipes
+     */
+    private static class ReadView
+    {
+        // Recipes in title order, in a search engine
+        final RecipeSearchEngine search = new RecipeSearchEngine();
+
+        // Every ordinal in the engine, for searches without a tag filter
+        final int[] all;
+
+        // Response to /tags
+        final byte[] tags;
+
+        ReadView(Recipe[] byTitle, TagRegistry registry)
+        {
+            search.setRecipes(byTitle);
+            all = new int[byTitle.length];
+            for (int i = 0; i < all.length; ++i)
+            {
+                all[i] = i;
+            }
+
+            String[] names = registry.getTags().toArray(new String[0]);
+            Arrays.sort(names);
+            StringBuilder sb = new StringBuilder("{\"untagged\":").append(registry.getUntaggedCount());
+            sb.append(",\"tags\":[");
+            for (int i = 0; i < names.length; ++i)
+            {
+                sb.append(i > 0 ? ",{\"name\":" : "{\"name\":");
+                Json.quote(sb, names[i]).append(",\"count\":").append(registry.getCount(names[i])).append('}');
+            }
+            tags = utf8(sb.append("]}"));
+        }
+    }
+
+    /*
+     * Error sent back as an HTTP status and message
+     */
+    private static class HttpError extends Exception
+    {
+        final int status;
+
+        HttpError(int status, String message)
+        {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Recipes served
+    private final RecipeEngine engine;
+
+    // The HTTP server, and the threads requests are handled on
+    private final HttpServer server;
+    private final ExecutorService workers;
+
+    // Read view of the latest version of the recipes
+    private volatile ReadView view;
+
+    // Saves the recipes file after changes
+    private final ExecutorService saver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "Recipe server saver");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    // Whether there are changes not yet saved, and whether a save is
+    // waiting to run
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final AtomicBoolean saveQueued = new AtomicBoolean(false);
+
+    /*
+     * Initialise a new server (call start() to start serving)
+     *
+     * @param engine   Recipes to serve, already loaded (and not being
+     *                 changed while this is called)
+     * @param address  Address to listen on
+     */
+    public RecipeServer(RecipeEngine engine, InetSocketAddress address) throws IOException
+    {
+        this.engine = engine;
+        view = newView();
+
+        // The fixed pool bounds itself, but virtual threads don't run out,
+        // so limit how many run at once
+        workers = createWorkers();
+        server = HttpServer.create(address, 0);
+        server.setExecutor(workers instanceof ThreadPoolExecutor ? workers : new BoundedExecutor(workers, THREADS));
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                RecipeServer.this.handle(exchange);
+            }
+        });
+    }
+
+    // Start serving
+    public void start()
+    {
+        server.start();
+    }
+
+    // Stop serving, and save any changes.  Saves only ever run on the
+    // saver thread, so this queues a last one there and waits for it.
+    public void stop()
+    {
+        server.stop(1);
+        workers.shutdown();
+        try
+        {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+            saver.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    save();
+                }
+            });
+            saver.shutdown();
+            saver.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // @return the address served on
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }
+
+    /*
+     * Load the recipes file and serve it until the program is stopped
+     *
+     * @param file  Recipes file
+     * @param port  Port to listen on (on localhost only)
+     */
+    public static void serve(File file, int port)
+    {
+        try
+        {
+            RecipeEngine engine = new RecipeEngine(file);
+            engine.load();
+            RecipeMetrics.register(engine.getStore());
+
+            final RecipeServer server = new RecipeServer(engine,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread("Recipe server shutdown") {
+                @Override
+                public void run()
+                {
+                    server.stop();
+                }
+            });
+
+            System.out.printf("Serving %,d recipes on http://localhost:%d/ (%s, at most %d requests at once)\n",
+                engine.size(), server.getAddress().getPort(),
+                server.workers instanceof ThreadPoolExecutor ? "thread pool" : "virtual threads", THREADS);
+        }
+        catch (Exception e)
+        {
+            System.err.println("Could not start the recipe server.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Handle a request, sending back JSON or an error
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/recipes"))
+            {
+                if (method.equals("GET"))
+                {
+                    send(exchange, 200, search(parseQuery(exchange.getRequestURI().getRawQuery())));
+                }
+                else if (method.equals("POST"))
+                {
+                    send(exchange, 201, utf8(writeRecipe(new StringBuilder(), add(readBody(exchange)), true)));
+                }
+                else
+                {
+                    throw new HttpError(405, "Use GET or POST");
+                }
+            }
+            else if (path.startsWith("/recipes/"))
+            {
+                int id = parseId(path.substring("/recipes/".length()));
+                if (method.equals("GET"))
+                {
+                    send(exchange, 200, utf8(writeRecipe(new StringBuilder(), get(id), true)));
+                }
+                else if (method.equals("PUT"))
+                {
+                    send(exchange, 200, utf8(writeRecipe(new StringBuilder(), replace(id, readBody(exchange)), true)));
+                }
+                else if (method.equals("DELETE"))
+                {
+                    remove(id);
+                    send(exchange, 200, utf8(new StringBuilder("{\"deleted\":").append(id).append('}')));
+                }
+                else
+                {
+                    throw new HttpError(405, "Use GET, PUT or DELETE");
+                }
+            }
+            else if (path.equals("/tags"))
+            {
+                if (!method.equals("GET"))
+                {
+                    throw new HttpError(405, "Use GET");
+                }
+                send(exchange, 200, view.tags);
+            }
+            else
+            {
+                throw new HttpError(404, "No such resource");
+            }
+        }
+        catch (HttpError e)
+        {
+            sendError(exchange, e.status, e.getMessage());
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            sendError(exchange, 500, e.toString());
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    // Search the recipes
+    private byte[] search(Map<String, String> params) throws Exception
+    {
+        ReadView v = view;
+        String query = params.containsKey("q") ? params.get("q").toLowerCase() : "";
+        int offset = Math.max(0, parseInt(params, "offset", 0));
+        int limit = Math.min(MAX_LIMIT, Math.max(0, parseInt(params, "limit", DEFAULT_LIMIT)));
+
+        int[] candidates = v.all;
+        String tags = params.get("tags");
+        if (tags != null)
+        {
+            HashSet<String> selected = new HashSet<String>();
+            for (String tag : tags.split(","))
+            {
+                if (tag.trim().length() > 0)
+                {
+                    selected.add(tag.trim().toLowerCase());
+                }
+            }
+            candidates = v.search.filterByTags(selected, "true".equals(params.get("untagged")));
+        }
+        int[] found = v.search.search(candidates, query);
+
+        StringBuilder sb = new StringBuilder("{\"total\":").append(found.length);
+        sb.append(",\"offset\":").append(offset).append(",\"recipes\":[");
+        for (int i = offset; i < found.length && i < offset + limit; ++i)
+        {
+            if (i > offset)
+            {
+                sb.append(',');
+            }
+            writeRecipe(sb, v.search.getRecipe(found[i]), false);
+        }
+        return utf8(sb.append("]}"));
+    }
+
+    // @return the recipe with an ID
+    private Recipe get(int id) throws HttpError
+    {
+        Recipe recipe = engine.getSnapshot().get(id);
+        if (recipe == null)
+        {
+            throw new HttpError(404, "No recipe " + id);
+        }
+        return recipe;
+    }
+
+    // Add a recipe from a request body
+    private Recipe add(String body) throws Exception
+    {
+        final Recipe recipe = parseRecipe(body);
+        return change(new Callable<Recipe>() {
+            @Override
+            public Recipe call() throws HttpError
+            {
+                checkTitle(recipe.getTitle(), null);
+                return engine.add(recipe);
+            }
+        });
+    }
+
+    // Replace a recipe from a request body
+    private Recipe replace(final int id, String body) throws Exception
+    {
+        final Recipe recipe = parseRecipe(body);
+        return change(new Callable<Recipe>() {
+            @Override
+            public Recipe call() throws HttpError
+            {
+                Recipe old = get(id);
+                checkTitle(recipe.getTitle(), old);
+                return engine.replace(old, recipe);
+            }
+        });
+    }
+
+    // Remove a recipe
+    private void remove(final int id) throws Exception
+    {
+        change(new Callable<Recipe>() {
+            @Override
+            public Recipe call() throws HttpError
+            {
+                return engine.remove(get(id).getId());
+            }
+        });
+    }
+
+    // Make sure a title isn't used by another recipe
+    private void checkTitle(String title, Recipe old) throws HttpError
+    {
+        if (engine.containsTitle(title) && !(old != null && old.getTitle().equals(title)))
+        {
+            throw new HttpError(409, "A recipe with that title already exists");
+        }
+    }
+
+    /*
+     * Change the recipes on the writer thread, publish a read view of the
+     * changed recipes, and save them soon after
+     *
+     * @param change  Change to make
+     *
+     * @return what the change returned
+     */
+    private Recipe change(final Callable<Recipe> change) throws Exception
+    {
+        Recipe result = onWriter(new Callable<Recipe>() {
+            @Override
+            public Recipe call() throws Exception
+            {
+                Recipe changed = change.call();
+
+                // The title order and tags are kept by the writer, so copy
+                // them here, before the next change
+                view = newView();
+                return changed;
+            }
+        });
+        dirty.set(true);
+        if (saveQueued.compareAndSet(false, true))
+        {
+            saver.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep(SAVE_DELAY_MS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // Save now
+                    }
+                    saveQueued.set(false);
+                    save();
+                }
+            });
+        }
+        return result;
+    }
+
+    // Save the recipes file, if anything has changed (on the saver thread)
+    private void save()
+    {
+        if (!dirty.getAndSet(false))
+        {
+            return;
+        }
+        try
+        {
+            engine.save();
+        }
+        catch (Exception e)
+        {
+            dirty.set(true);
+            System.err.println("Error while saving recipes.");
+            e.printStackTrace();
+        }
+    }
+
+    // @return a read view of the recipes as they are now (called on the
+    //         writer thread)
+    private ReadView newView()
+    {
+        return new ReadView(engine.getOrdering().toArray(RecipeOrdering.Order.TITLE), engine.getTagRegistry());
+    }
+
+    /*
+     * Run something on the writer thread (the event dispatch thread) and
+     * wait for it
+     *
+     * @param task  Task to run
+     *
+     * @return what the task returned
+     */
+    private static <T> T onWriter(Callable<T> task) throws Exception
+    {
+        FutureTask<T> future = new FutureTask<T>(task);
+        SwingUtilities.invokeLater(future);
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception)cause : e;
+        }
+    }
+
+    /*
+     * Read a recipe from JSON
+     *
+     * @param body  JSON object
+     *
+     * @return the recipe (without an ID)
+     */
+    private static Recipe parseRecipe(String body) throws HttpError
+    {
+        Object parsed;
+        try
+        {
+            parsed = Json.parse(body);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new HttpError(400, "Bad JSON: " + e.getMessage());
+        }
+        if (!(parsed instanceof Map))
+        {
+            throw new HttpError(400, "Expected a JSON object");
+        }
+        Map<?, ?> fields = (Map<?, ?>)parsed;
+
+        String title = stringField(fields, "title");
+        if (title == null || title.trim().length() == 0)
+        {
+            throw new HttpError(400, "A recipe needs a title");
+        }
+        String description = stringField(fields, "description");
+        Recipe recipe = new Recipe(title.trim(), description == null ? "" : description,
+            stringsField(fields, "ingredients"), stringsField(fields, "procedure"),
+            new HashSet<String>(stringsField(fields, "tags")));
+
+        Object servings = fields.get("servings");
+        if (servings instanceof Double)
+        {
+            recipe.setServings(((Double)servings).intValue());
+        }
+        else if (servings != null)
+        {
+            throw new HttpError(400, "servings must be a number");
+        }
+        return recipe;
+    }
+
+    // @return a string field, or null if it is missing
+    private static String stringField(Map<?, ?> fields, String name) throws HttpError
+    {
+        Object value = fields.get(name);
+        if (value != null && !(value instanceof String))
+        {
+            throw new HttpError(400, name + " must be a string");
+        }
+        return (String)value;
+    }
+
+    // @return a field holding a list of strings (empty if it is missing)
+    private static ArrayList<String> stringsField(Map<?, ?> fields, String name) throws HttpError
+    {
+        ArrayList<String> strings = new ArrayList<String>();
+        Object value = fields.get(name);
+        if (value == null)
+        {
+            return strings;
+        }
+        if (!(value instanceof List))
+        {
+            throw new HttpError(400, name + " must be a list of strings");
+        }
+        for (Object item : (List<?>)value)
+        {
+            if (!(item instanceof String))
+            {
+                throw new HttpError(400, name + " must be a list of strings");
+            }
+            strings.add((String)item);
+        }
+        return strings;
+    }
+
+    /*
+     * Write a recipe as JSON
+     *
+     * @param sb      Builder to write to
+     * @param recipe  Recipe to write
+     * @param full    Whether to write everything, or just the ID, title
+     *                and tags
+     *
+     * @return the builder
+     */
+    private static StringBuilder writeRecipe(StringBuilder sb, Recipe recipe, boolean full)
+    {
+        sb.append("{\"id\":").append(recipe.getId()).append(",\"title\":");
+        Json.quote(sb, recipe.getTitle());
+        if (full)
+        {
+            sb.append(",\"description\":");
+            Json.quote(sb, recipe.getDescription());
+            sb.append(",\"servings\":").append(recipe.getServings());
+            sb.append(",\"ingredients\":");
+            Json.quote(sb, recipe.getIngredients());
+            sb.append(",\"procedure\":");
+            Json.quote(sb, recipe.getProcedure());
+        }
+        sb.append(",\"tags\":");
+        return Json.quote(sb, recipe.getTags()).append('}');
+    }
+
+    // @return the request body as text
+    private static String readBody(HttpExchange exchange) throws IOException, HttpError
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+        {
+            body.write(buffer, 0, n);
+            if (body.size() > MAX_BODY_BYTES)
+            {
+                throw new HttpError(413, "Request body too large");
+            }
+        }
+        return body.toString("UTF-8");
+    }
+
+    // @return the parameters of a raw query string
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException, HttpError
+    {
+        HashMap<String, String> params = new HashMap<String, String>();
+        if (rawQuery == null)
+        {
+            return params;
+        }
+        for (String pair : rawQuery.split("&"))
+        {
+            int eq = pair.indexOf('=');
+            try
+            {
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                params.put(name, value);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // A malformed % escape
+                throw new HttpError(400, "Bad query string");
+            }
+        }
+        return params;
+    }
+
+    // @return a whole-number parameter, or a default if it is missing
+    private static int parseInt(Map<String, String> params, String name, int fallback) throws HttpError
+    {
+        String value = params.get(name);
+        if (value == null)
+        {
+            return fallback;
+        }
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new HttpError(400, name + " must be a whole number");
+        }
+    }
+
+    // @return a recipe ID from a path
+    private static int parseId(String id) throws HttpError
+    {
+        try
+        {
+            return Integer.parseInt(id);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new HttpError(404, "No such recipe");
+        }
+    }
+
+    // Send an error message
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+    {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        send(exchange, status, utf8(Json.quote(sb, message).append('}')));
+    }
+
+    // Send a JSON response
+    private static void send(HttpExchange exchange, int status, byte[] json) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, json.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(json);
+        out.close();
+    }
+
+    private static byte[] utf8(CharSequence text)
+    {
+        try
+        {
+            return text.toString().getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    /*
+     * Create the threads requests are handled on: virtual threads if this
+     * JDK has them (found by reflection, as we build for Java 7), or else a
+     * fixed pool which runs requests on the accepting thread once its queue
+     * is full, so that accepting slows down to match
+     */
+    private static ExecutorService createWorkers()
+    {
+        try
+        {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e)
+        {
+            // No virtual threads
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    return new Thread(r, "Recipe server worker " + count.incrementAndGet());
+                }
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /*
+     * Executor running at most a number of tasks at once.  Submitting blocks
+     * while that many are running.
+     */
+    private static class BoundedExecutor implements Executor
+    {
+        private final Executor executor;
+        private final Semaphore running;
+
+        BoundedExecutor(Executor executor, int limit)
+        {
+            this.executor = executor;
+            this.running = new Semaphore(limit);
+        }
+
+        @Override
+        public void execute(final Runnable task)
+        {
+            running.acquireUninterruptibly();
+            try
+            {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            task.run();
+                        }
+                        finally
+                        {
+                            running.release();
+                        }
+                    }
+                });
+            }
+            catch (RuntimeException e)
+            {
+                running.release();
+                throw e;
+            }
+        }
+    }
+}
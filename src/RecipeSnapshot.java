@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+
+/*
+ * RecipeSnapshot.java
+ *
+ * Immutable, point-in-time view of every recipe in the recipe store.  Each
+ * change to the store publishes a new snapshot, and anything holding an
+ * older snapshot keeps seeing the recipes exactly as they were.  As the
+ * recipes in a snapshot are frozen too, snapshots can be read from any
+ * thread without locking.
+ *
+ * Recipes are kept by ID in fixed-size chunks.  A new version only copies
+ * the chunk table and the chunks that changed, and shares every other chunk
+ * with the version before it, so publishing an edit stays cheap however
+ * many recipes there are.
+ */
+public final class RecipeSnapshot
+{
+    // Recipes per chunk (as a power of two)
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Snapshot of an empty store
+    public static final RecipeSnapshot EMPTY = new RecipeSnapshot(new Recipe[0][], 0, 0);
+
+    // Recipes by ID, in chunks (a chunk is null if it has no recipes yet)
+    private final Recipe[][] chunks;
+
+    // Number of recipes
+    private final int size;
+
+    // Version number of the store when the snapshot was taken
+    private final long version;
+
+    private RecipeSnapshot(Recipe[][] chunks, int size, long version)
+    {
+        this.chunks = chunks;
+        this.size = size;
+        this.version = version;
+    }
+
+    // @return the recipe with an ID, or null if there isn't one
+    public Recipe get(int id)
+    {
+        if (id < 0)
+        {
+            return null;
+        }
+        int chunk = id >>> CHUNK_BITS;
+        if (chunk >= chunks.length || chunks[chunk] == null)
+        {
+            return null;
+        }
+        return chunks[chunk][id & CHUNK_MASK];
+    }
+
+    // @return number of recipes
+    public int size()
+    {
+        return size;
+    }
+
+    // @return the store's version number when the snapshot was taken
+    public long getVersion()
+    {
+        return version;
+    }
+
+    // @return an upper bound on the IDs of recipes in the snapshot
+    public int getIdLimit()
+    {
+        return chunks.length * CHUNK_SIZE;
+    }
+
+    // @return a new list of all recipes, in ID order
+    public ArrayList<Recipe> getRecipes()
+    {
+        ArrayList<Recipe> all = new ArrayList<Recipe>(size);
+        for (Recipe[] chunk : chunks)
+        {
+            if (chunk == null)
+            {
+                continue;
+            }
+            for (Recipe r : chunk)
+            {
+                if (r != null)
+                {
+                    all.add(r);
+                }
+            }
+        }
+        return all;
+    }
+
+    /*
+     * Builds the next version of a snapshot.  Chunks are copied the first
+     * time they are changed, so a builder can make any number of changes
+     * without affecting the snapshot it started from.
+     */
+    public static class Builder
+    {
+        private Recipe[][] chunks;
+
+        // Which chunks have already been copied for this builder
+        private boolean[] owned;
+
+        private int size;
+
+        /*
+         * Start building from an existing snapshot
+         *
+         * @param base  Snapshot to start from
+         */
+        public Builder(RecipeSnapshot base)
+        {
+            chunks = base.chunks.clone();
+            owned = new boolean[chunks.length];
+            size = base.size;
+        }
+
+        /*
+         * Put a recipe under its ID, replacing any recipe already there
+         *
+         * @param recipe  Frozen recipe to put
+         */
+        public void put(Recipe recipe)
+        {
+            int id = recipe.getId();
+            Recipe[] chunk = ownChunk(id >>> CHUNK_BITS);
+            if (chunk[id & CHUNK_MASK] == null)
+            {
+                ++size;
+            }
+            chunk[id & CHUNK_MASK] = recipe;
+        }
+
+        /*
+         * Remove the recipe with an ID, if there is one
+         *
+         * @param id  ID of the recipe
+         */
+        public void remove(int id)
+        {
+            int c = id >>> CHUNK_BITS;
+            if (c >= chunks.length || chunks[c] == null || chunks[c][id & CHUNK_MASK] == null)
+            {
+                return;
+            }
+            ownChunk(c)[id & CHUNK_MASK] = null;
+            --size;
+        }
+
+        /*
+         * Finish building
+         *
+         * @param version  Version number of the new snapshot
+         *
+         * @return the new snapshot.  The builder must not be used after
+         *         this.
+         */
+        public RecipeSnapshot build(long version)
+        {
+            return new RecipeSnapshot(chunks, size, version);
+        }
+
+        // @return our own copy of a chunk, growing the chunk table if needed
+        private Recipe[] ownChunk(int c)
+        {
+            if (c >= chunks.length)
+            {
+                int length = Math.max(c + 1, chunks.length * 2);
+                Recipe[][] grownChunks = new Recipe[length][];
+                System.arraycopy(chunks, 0, grownChunks, 0, chunks.length);
+                boolean[] grownOwned = new boolean[length];
+                System.arraycopy(owned, 0, grownOwned, 0, owned.length);
+                chunks = grownChunks;
+                owned = grownOwned;
+            }
+            if (!owned[c])
+            {
+                chunks[c] = chunks[c] == null ? new Recipe[CHUNK_SIZE] : chunks[c].clone();
+                owned[c] = true;
+            }
+            return chunks[c];
+        }
+    }
+}
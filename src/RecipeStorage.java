@@ -0,0 +1,48 @@
+/*
+ * RecipeStorage.java
+ *
+ * Where the recipe store keeps its recipes.  Recipes are stored under their
+ * IDs, and titles are indexed so that a recipe can be found by title.
+ *
+ * A storage may keep the recipes it is given as they are, or pack them into
+ * some more compact form and hand out read-only views of them instead.
+ * Either way, a recipe handed out keeps showing the contents it had when it
+ * was handed out, even if the ID is later given a new version or removed.
+ */
+public interface RecipeStorage
+{
+    /*
+     * Store a recipe under its ID, replacing any recipe already stored there
+     *
+     * @param recipe  Recipe to store.  Its ID must already be set.
+     *
+     * @return the recipe to hand out for the ID from now on (either recipe
+     *         itself, or a view of the stored copy)
+     */
+    Recipe put(Recipe recipe);
+
+    /*
+     * Remove the recipe stored under an ID
+     *
+     * @param id  ID of the recipe
+     */
+    void remove(int id);
+
+    /*
+     * Get a stored recipe
+     *
+     * @param id  ID of the recipe
+     *
+     * @return the recipe, or null if nothing is stored under the ID
+     */
+    Recipe get(int id);
+
+    /*
+     * Find a recipe by title
+     *
+     * @param title  Title to look for
+     *
+     * @return ID of the recipe with the title, or -1 if there isn't one
+     */
+    int findTitle(String title);
+}
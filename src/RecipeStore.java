@@ -0,0 +1,417 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+
+/*
+ * RecipeStore.java
+ *
+ * Holds the user's saved recipes.  All changes to the recipes go through the
+ * store, which publishes an event for each one.
+ *
+ * Every recipe has a persistent integer ID, which is kept across edits and
+ * saved in the recipes file.  IDs are handed out densely from zero.  Titles
+ * are still unique, and recipes can be looked up by either.
+ *
+ * The recipes themselves are kept in a RecipeStorage.  By default this is a
+ * plain array of Recipe objects; very large collections can use a compact
+ * columnar storage instead by running with -Dsat.storage=columnar, or keep
+ * the columns off the heap with -Dsat.storage=offheap.  Recipes
+ * handed out by the store (including in events) are the storage's versions,
+ * which may be views of the stored data.
+ *
+ * Recipes are frozen as they are stored.  After every change the store also
+ * publishes a new immutable RecipeSnapshot of all its recipes through an
+ * atomic reference.  Changes must all be made from one thread (the event
+ * dispatch thread), but snapshots can be taken and read from any thread, so
+ * background work such as saving sees a consistent collection without any
+ * locking.
+ *
+ * There are two kinds of subscriber:
+ * * Indexes (such as the tag registry and recipe ordering) hear about each
+ *   change straight away, so they are always consistent with the store.
+ * * Listeners (such as UI components) hear about changes in batches.  All
+ *   changes made before the event dispatch thread gets round to the batch
+ *   are delivered together, so a bulk import only causes one repaint.
+ */
+public class RecipeStore
+{
+    // Where the recipes are kept
+    private final RecipeStorage storage;
+
+    // Next ID to hand out (volatile, as it is saved along with snapshots
+    // from other threads)
+    private volatile int nextId = 0;
+
+    // Latest snapshot of the recipes, and its version number
+    private final AtomicReference<RecipeSnapshot> snapshot =
+        new AtomicReference<RecipeSnapshot>(RecipeSnapshot.EMPTY);
+    private long version = 0;
+
+    // Built-in indexes
+    private final TagRegistry tagRegistry = new TagRegistry();
+    private final RecipeOrdering ordering = new RecipeOrdering();
+    private final IngredientIndex ingredientIndex = new IngredientIndex(this);
+
+    // Subscribers told about each change immediately
+    private final ArrayList<RecipeStoreListener> indexes = new ArrayList<RecipeStoreListener>();
+
+    // Subscribers told about changes in batches
+    private final ArrayList<RecipeStoreListener> listeners = new ArrayList<RecipeStoreListener>();
+
+    // Changes not yet delivered to listeners
+    private ArrayList<RecipeStoreEvent> pending = new ArrayList<RecipeStoreEvent>();
+
+    // Whether delivery of the pending changes has been scheduled
+    private boolean flushScheduled = false;
+
+    /*
+     * Initialise a new, empty store, using the storage selected by the
+     * sat.storage system property
+     */
+    public RecipeStore()
+    {
+        this(createStorage());
+    }
+
+    // @return a new storage of the kind selected by the sat.storage system
+    //         property ("heap", "columnar" or "offheap")
+    private static RecipeStorage createStorage()
+    {
+        String kind = System.getProperty("sat.storage", "heap");
+        if (kind.equals("columnar"))
+        {
+            return new ColumnarRecipeStorage();
+        }
+        if (kind.equals("offheap"))
+        {
+            String mapDir = System.getProperty("sat.storage.mapDir");
+            return new OffHeapRecipeStorage(mapDir == null ? null : new File(mapDir));
+        }
+        return new HeapRecipeStorage();
+    }
+
+    /*
+     * Initialise a new, empty store
+     *
+     * @param storage  Where to keep the recipes
+     */
+    public RecipeStore(RecipeStorage storage)
+    {
+        this.storage = storage;
+        addIndex(tagRegistry);
+        addIndex(ordering);
+        addIndex(ingredientIndex);
+    }
+
+    /*
+     * Fill the store with recipes loaded from disk.  No events are sent, as
+     * nothing has subscribed yet when recipes are first loaded.
+     *
+     * Recipes keep the IDs they were saved with.  Recipes without one (from
+     * files saved before IDs existed) or with a clashing one are given new
+     * IDs after the highest saved ID.
+     *
+     * @param loaded  Recipes which were loaded
+     */
+    public void load(Collection<Recipe> loaded)
+    {
+        load(loaded, 0);
+    }
+
+    /*
+     * Fill the store with recipes loaded from disk, as above
+     *
+     * @param loaded       Recipes which were loaded
+     * @param savedNextId  Next ID saved with them (0 if none was), so the IDs
+     *                     of recipes removed before saving aren't reused
+     */
+    public void load(Collection<Recipe> loaded, int savedNextId)
+    {
+        // Find the highest saved ID, so that new IDs start after it
+        int limit = Math.max(nextId, savedNextId);
+        for (Recipe r : loaded)
+        {
+            limit = Math.max(limit, r.getId() + 1);
+        }
+        nextId = limit;
+
+        RecipeSnapshot.Builder changes = new RecipeSnapshot.Builder(snapshot.get());
+        LinkedHashMap<String, Recipe> needIds = new LinkedHashMap<String, Recipe>();
+        for (Recipe r : loaded)
+        {
+            // Titles are unique; later recipes replace earlier ones with the
+            // same title, as they used to when recipes were keyed by title.
+            // That includes earlier ones still waiting for an ID.
+            needIds.remove(r.getTitle());
+            int existing = storage.findTitle(r.getTitle());
+            if (existing >= 0)
+            {
+                unload(storage.get(existing), changes);
+            }
+
+            if (r.getId() < 0 || storage.get(r.getId()) != null)
+            {
+                needIds.put(r.getTitle(), r);
+                continue;
+            }
+            tagRegistry.addRecipe(put(r, changes));
+        }
+
+        for (Recipe r : needIds.values())
+        {
+            r.setId(nextId++);
+            tagRegistry.addRecipe(put(r, changes));
+        }
+
+        // Sort the loaded recipes into title order all at once
+        commit(changes);
+        ordering.loadAll(snapshot.get().getRecipes());
+    }
+
+    // Take a loaded recipe back out, if it turns out to be a duplicate
+    private void unload(Recipe recipe, RecipeSnapshot.Builder changes)
+    {
+        storage.remove(recipe.getId());
+        changes.remove(recipe.getId());
+        tagRegistry.removeRecipe(recipe);
+        ordering.remove(recipe);
+    }
+
+    // Freeze a recipe and put it in storage, returning the stored version
+    private Recipe put(Recipe recipe, RecipeSnapshot.Builder changes)
+    {
+        recipe.freeze();
+        Recipe stored = storage.put(recipe);
+        changes.put(stored);
+        return stored;
+    }
+
+    // Publish the next snapshot
+    private void commit(RecipeSnapshot.Builder changes)
+    {
+        snapshot.set(changes.build(++version));
+    }
+
+    /*
+     * Add a new recipe.  The recipe is given a new ID.
+     *
+     * @param recipe  Recipe to add.  Its title must not already be in use.
+     *                It is frozen by being added.
+     *
+     * @return the stored version of the recipe
+     */
+    public Recipe add(Recipe recipe)
+    {
+        RecipeSnapshot.Builder changes = new RecipeSnapshot.Builder(snapshot.get());
+        recipe.setId(nextId++);
+        Recipe stored = put(recipe, changes);
+        commit(changes);
+        publish(new RecipeStoreEvent(RecipeStoreEvent.Type.ADDED, null, stored));
+        return stored;
+    }
+
+    /*
+     * Add many new recipes at once
+     *
+     * @param added  Recipes to add.  Their titles must not already be in use.
+     */
+    public void addAll(Collection<Recipe> added)
+    {
+        for (Recipe r : added)
+        {
+            add(r);
+        }
+    }
+
+    /*
+     * Replace a recipe with a new version of it.  The new version takes over
+     * the old one's ID.
+     *
+     * @param oldRecipe  Recipe being replaced
+     * @param newRecipe  New version of the recipe.  If the title changed, the
+     *                   new title must not already be in use.  It is frozen
+     *                   by being stored.
+     *
+     * @return the stored version of the new recipe
+     */
+    public Recipe replace(Recipe oldRecipe, Recipe newRecipe)
+    {
+        RecipeSnapshot.Builder changes = new RecipeSnapshot.Builder(snapshot.get());
+        boolean renamed = !oldRecipe.getTitle().equals(newRecipe.getTitle());
+        newRecipe.setId(oldRecipe.getId());
+        Recipe stored = put(newRecipe, changes);
+        commit(changes);
+
+        publish(new RecipeStoreEvent(
+            renamed ? RecipeStoreEvent.Type.RENAMED : RecipeStoreEvent.Type.UPDATED,
+            oldRecipe, stored));
+        return stored;
+    }
+
+    /*
+     * Remove a recipe.  Its ID is not handed out again (the next ID is saved
+     * in the recipes file, so not after a restart either).
+     *
+     * @param id  ID of the recipe to remove
+     *
+     * @return the removed recipe, or null if there was no such recipe
+     */
+    public Recipe remove(int id)
+    {
+        Recipe removed = get(id);
+        if (removed != null)
+        {
+            RecipeSnapshot.Builder changes = new RecipeSnapshot.Builder(snapshot.get());
+            storage.remove(id);
+            changes.remove(id);
+            commit(changes);
+            publish(new RecipeStoreEvent(RecipeStoreEvent.Type.REMOVED, removed, null));
+        }
+        return removed;
+    }
+
+    /*
+     * Note that a recipe was viewed, for the recently viewed order
+     *
+     * @param recipe  The viewed recipe
+     */
+    public void recipeViewed(Recipe recipe)
+    {
+        ordering.recipeViewed(recipe);
+    }
+
+    /*
+     * Send an event to indexes now, and queue it for listeners
+     *
+     * @param event  Event to publish
+     */
+    private void publish(RecipeStoreEvent event)
+    {
+        List<RecipeStoreEvent> single = Collections.singletonList(event);
+        for (RecipeStoreListener index : indexes)
+        {
+            index.recipesChanged(single);
+        }
+
+        pending.add(event);
+        if (!flushScheduled)
+        {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run()
+                {
+                    flush();
+                }
+            });
+        }
+    }
+
+    /*
+     * Deliver all pending events to listeners
+     */
+    public void flush()
+    {
+        flushScheduled = false;
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        List<RecipeStoreEvent> events = Collections.unmodifiableList(pending);
+        pending = new ArrayList<RecipeStoreEvent>();
+        for (RecipeStoreListener l : new ArrayList<RecipeStoreListener>(listeners))
+        {
+            l.recipesChanged(events);
+        }
+    }
+
+    // Getters
+
+    // @return the recipe with an ID, or null if there isn't one
+    public Recipe get(int id)
+    {
+        return snapshot.get().get(id);
+    }
+
+    // @return the recipe with a title, or null if there isn't one
+    public Recipe getByTitle(String title)
+    {
+        int id = storage.findTitle(title);
+        return id < 0 ? null : get(id);
+    }
+
+    // @return whether a recipe with a title exists
+    public boolean containsTitle(String title)
+    {
+        return storage.findTitle(title) >= 0;
+    }
+
+    // @return number of recipes
+    public int size()
+    {
+        return snapshot.get().size();
+    }
+
+    // @return one more than the highest ID handed out so far
+    public int getIdLimit()
+    {
+        return nextId;
+    }
+
+    // @return a new list of all recipes, in ID order
+    public ArrayList<Recipe> getRecipes()
+    {
+        return snapshot.get().getRecipes();
+    }
+
+    // @return the latest snapshot of the recipes (safe to call from any
+    //         thread)
+    public RecipeSnapshot getSnapshot()
+    {
+        return snapshot.get();
+    }
+
+    // @return the tag registry index
+    public TagRegistry getTagRegistry()
+    {
+        return tagRegistry;
+    }
+
+    // @return the recipe ordering index
+    public RecipeOrdering getOrdering()
+    {
+        return ordering;
+    }
+
+    // @return the ingredient index
+    public IngredientIndex getIngredientIndex()
+    {
+        return ingredientIndex;
+    }
+
+    // Subscribe to changes as they happen
+    public void addIndex(RecipeStoreListener index)
+    {
+        indexes.add(index);
+    }
+    public void removeIndex(RecipeStoreListener index)
+    {
+        indexes.remove(index);
+    }
+
+    // Subscribe to batches of changes
+    public void addListener(RecipeStoreListener l)
+    {
+        listeners.add(l);
+    }
+    public void removeListener(RecipeStoreListener l)
+    {
+        listeners.remove(l);
+    }
+}
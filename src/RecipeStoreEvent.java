@@ -0,0 +1,63 @@
+/*
+ * RecipeStoreEvent.java
+ *
+ * Describes a single change made to the recipe store.
+ */
+public class RecipeStoreEvent
+{
+    // Kinds of change
+    public enum Type
+    {
+        // A new recipe was added
+        ADDED,
+
+        // A recipe was replaced by a new version with the same title
+        UPDATED,
+
+        // A recipe was replaced by a new version with a different title
+        RENAMED,
+
+        // A recipe was removed
+        REMOVED
+    }
+
+    // Kind of change
+    private final Type type;
+
+    // Recipe before the change (null for ADDED)
+    private final Recipe oldRecipe;
+
+    // Recipe after the change (null for REMOVED)
+    private final Recipe newRecipe;
+
+    /*
+     * Construct a new event
+     *
+     * @param type       Kind of change
+     * @param oldRecipe  Recipe before the change (null if added)
+     * @param newRecipe  Recipe after the change (null if removed)
+     */
+    public RecipeStoreEvent(Type type, Recipe oldRecipe, Recipe newRecipe)
+    {
+        this.type = type;
+        this.oldRecipe = oldRecipe;
+        this.newRecipe = newRecipe;
+    }
+
+    // Getters
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public Recipe getOldRecipe()
+    {
+        return oldRecipe;
+    }
+
+    public Recipe getNewRecipe()
+    {
+        return newRecipe;
+    }
+}
@@ -0,0 +1,16 @@
+import java.util.List;
+
+/*
+ * RecipeStoreListener.java
+ *
+ * Interface for classes that want to hear about changes to the recipe store.
+ */
+public interface RecipeStoreListener
+{
+    /*
+     * Called after recipes in the store have changed
+     *
+     * @param events  The changes, in the order they were made
+     */
+    void recipesChanged(List<RecipeStoreEvent> events);
+}
@@ -4,22 +4,64 @@ import javax.swing.text.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseAdapter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 public class RecipeViewComponent extends JPanel
 {
     // Current recipe being viewed
     public Recipe currentRecipe = null;
 
-    // Main document that is displayed in the viewer, where we write our text.
-    private final DefaultStyledDocument doc;
-
-    // The text pane containing our document
+    // The text pane showing the recipe
     private final JTextPane pane;
 
-    // Styles for the document display
-    private final Style mainStyle, headingStyle, subheadingStyle, tagsStyle;
+    // Recently shown (and prefetched) documents
+    private final RecipeDocumentCache documents = new RecipeDocumentCache(DOCUMENT_CACHE_BYTES);
+
+    // Builds documents for recipes likely to be viewed next
+    private final RecipePrefetcher prefetcher =
+        new RecipePrefetcher(documents, DOCUMENT_CACHE_BYTES / 4, PREFETCH_THREADS);
+
+    // Thread documents are built on, so that building a long recipe never
+    // holds up the event dispatch thread
+    private final ExecutorService documentBuilder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "Recipe document builder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    // Number of the latest document shown or asked for; a built document
+    // is only shown if nothing was asked for after it
+    private long documentRequest = 0;
+
+    // Control for showing the recipe scaled to a number of servings (only
+    // shown for recipes which say how many they serve)
+    private final JPanel servingsPanel;
+    private final JSpinner servingsSpinner;
+
+    // Set while we change the servings spinner ourselves
+    private boolean updatingServings = false;
+
+    // Estimated memory the document cache may use.
+    // Can be changed with -Dsat.viewer.cacheKB=<n>
+    private static final long DOCUMENT_CACHE_BYTES =
+        Integer.getInteger("sat.viewer.cacheKB", 16384) * 1024L;
 
-    private static final String INGREDIENT_PREFIX = "\u2022 ";
+    // Number of threads documents are prefetched on
+    private static final int PREFETCH_THREADS = 2;
+
+    // Number of rows either side of the viewed recipe to prefetch, and
+    // number of top search results to prefetch
+    private static final int PREFETCH_NEIGHBOURS = 2;
+    private static final int PREFETCH_RESULTS = 4;
 
     /*
      * Initialises a new RecipeViewComponent
@@ -29,54 +71,34 @@ public class RecipeViewComponent extends JPanel
         // Use border layout so we fill whole panel
         setLayout(new BorderLayout());
 
-        // Prepare StyleContext, and the document to display
-        StyleContext ctx = new StyleContext();
-        doc = new DefaultStyledDocument(ctx);
+        // Report the document cache's size with the other metrics
+        RecipeMetrics.getInstance().setDocumentCache(documents);
 
-        // Set up the text pane and add it to the component
-        pane = new JTextPane(doc);
+        // Set up the text pane and add it to the component, showing the
+        // welcome message
+        pane = new JTextPane(RecipeDocumentBuilder.buildMessage(
+            "Recipe Management Software\n\nClick \"New\" to get started."));
         pane.setEditable(false);
         add(pane);
 
-        // Set up main document style (used for paragraph text)
-        Style defaultStyle = ctx.getStyle(StyleContext.DEFAULT_STYLE);
-        mainStyle = ctx.addStyle("MainStyle", defaultStyle);
-        StyleConstants.setFontFamily(mainStyle, "serif");
-        StyleConstants.setFontSize(mainStyle, 18);
-        StyleConstants.setAlignment(mainStyle, StyleConstants.ALIGN_LEFT);
-        StyleConstants.setLeftIndent(mainStyle, 32);
-        StyleConstants.setRightIndent(mainStyle, 32);
-        StyleConstants.setLineSpacing(mainStyle, 0.2f);
-        doc.setLogicalStyle(0, mainStyle);
-
-        // Set up heading document style
-        headingStyle = ctx.addStyle("HeadingStyle", null);
-        StyleConstants.setForeground(headingStyle, Color.red);
-        StyleConstants.setFontFamily(headingStyle, "serif");
-        StyleConstants.setFontSize(headingStyle, 32);
-        StyleConstants.setBold(headingStyle, true);
-        StyleConstants.setItalic(headingStyle, true);
-        StyleConstants.setAlignment(headingStyle, StyleConstants.ALIGN_CENTER);
-        StyleConstants.setLineSpacing(headingStyle, 0.1f);
-
-        // Set up heading document style
-        subheadingStyle = ctx.addStyle("SubheadingStyle", null);
-        StyleConstants.setForeground(subheadingStyle, Color.blue);
-        StyleConstants.setFontFamily(subheadingStyle, "serif");
-        StyleConstants.setFontSize(subheadingStyle, 26);
-        StyleConstants.setAlignment(subheadingStyle, StyleConstants.ALIGN_CENTER);
-        StyleConstants.setLineSpacing(subheadingStyle, 0.1f);
-
-        // Set up tags section document style
-        tagsStyle = ctx.addStyle("TagsStyle", null);
-        StyleConstants.setForeground(tagsStyle, Color.gray);
-        StyleConstants.setFontFamily(tagsStyle, "serif");
-        StyleConstants.setFontSize(tagsStyle, 14);
-        StyleConstants.setAlignment(tagsStyle, StyleConstants.ALIGN_CENTER);
-        StyleConstants.setLineSpacing(tagsStyle, 0.1f);
-
-        // Show welcome message
-        appendLine("Recipe Management Software\n\nClick \"New\" to get started.", mainStyle);
+        // Set up the servings control
+        servingsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        servingsPanel.add(new JLabel("Servings:"));
+        servingsSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 1000, 1));
+        servingsSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e)
+            {
+                // Show the current recipe at the new number of servings
+                if (!updatingServings && currentRecipe != null)
+                {
+                    showRecipe(currentRecipe, (Integer)servingsSpinner.getValue());
+                }
+            }
+        });
+        servingsPanel.add(servingsSpinner);
+        servingsPanel.setVisible(false);
+        add(servingsPanel, BorderLayout.NORTH);
 
         // No recipe is shown by default, so we disable some of the toolbar
         // buttons which are not functional unless a recipe is shown.
@@ -95,132 +117,119 @@ public class RecipeViewComponent extends JPanel
         // Update state
         currentRecipe = recipe;
 
-        // Clear old content of the component
-        clearText();
-
-        // First print out the recipe title in the heading style
-        appendLine(recipe.getTitle(), headingStyle);
-
-        // Print out description
-        appendLine(recipe.getDescription(), mainStyle);
-
-        // Print out the recipe's tags
-        if (recipe.hasTags())
+        // Show the servings control if the recipe says how many it serves,
+        // starting at its own number of servings
+        updatingServings = true;
+        servingsPanel.setVisible(recipe.getServings() > 0);
+        if (recipe.getServings() > 0)
         {
-            final ArrayList<String> tags = recipe.getTags();
-            appendText("Tags: ", tagsStyle);
-            for (int i = 0; i < tags.size(); ++i)
-            {
-                if (i == tags.size() - 1)
-                {
-                    // Final tag: no comma
-                    appendText(String.format("%s", tags.get(i)), tagsStyle);
-                    continue;
-                }
-                // Tags not at end get a comma with comma
-                appendText(String.format("%s, ", tags.get(i)), tagsStyle);
-            }
+            servingsSpinner.setValue(recipe.getServings());
         }
-        // Add a line break after the tag list
-        appendLine("\n", tagsStyle);
+        updatingServings = false;
 
-        // Ingredients subheading
-        appendLine("Ingredients", subheadingStyle);
-
-        // Write all the ingredients
-        for (String ingredient : recipe.getIngredients())
-        {
-            // Ingredients are prefixed with constant prefix (bullet point character)
-            appendLine(String.format("%s%s", INGREDIENT_PREFIX, ingredient), mainStyle);
-        }
-
-        // Procedure subheading
-        appendLine("Directions", subheadingStyle);
-
-        // Write all the steps
-        for (int i = 0; i < recipe.getProcedureSize(); ++i)
-        {
-            // Steps are prefixed with step number
-            appendLine(String.format("%,d. %s", i + 1, recipe.getProcedureItem(i)), mainStyle);
-        }
-
-        // We need to move textpane caret to the top so that the scrollbar
-        // is moved to the top also.
-        pane.setCaretPosition(0);
+        // Write the recipe out
+        showRecipe(recipe, recipe.getServings());
 
         // We are showing recipe so toolbar buttons (edit, delete) can be
         // enabled
         SAT.onRecipeViewChanged(true);
 
-        // Refresh the recipe list selection
+        // Bump the recipe in the recently viewed order, and refresh the
+        // recipe list selection
+        SAT.engine.recipeViewed(recipe);
+        SAT.recipeList.recipeViewed(recipe);
         SAT.recipeList.refreshSelection();
+
+        // Get the recipes the user is likely to go to next ready: the rows
+        // either side of this one, then the top search results
+        ArrayList<Recipe> likely = SAT.recipeList.getNeighbours(recipe.getId(), PREFETCH_NEIGHBOURS);
+        if (SAT.currentSearchFrame != null && SAT.currentSearchFrame.isVisible())
+        {
+            likely.addAll(SAT.currentSearchComponent.getTopResults(PREFETCH_RESULTS));
+        }
+        prefetcher.prefetch(likely);
     }
 
     /*
-     * Show the default text in the recipe viewer, and stop showing recipe that
-     * was being viewed.
+     * Prefetch the documents of recipes likely to be viewed soon, replacing
+     * any earlier prefetching that hasn't been done yet
+     *
+     * @param recipes  Recipes to prefetch, most likely first
      */
-    public void viewNoRecipe()
+    public void prefetch(Collection<Recipe> recipes)
     {
-        // No recipe
-        currentRecipe = null;
-
-        // Clear old content of the component
-        clearText();
-
-        // No recipe so toolbar buttons (edit, delete) are disabled
-        SAT.onRecipeViewChanged(false);
+        prefetcher.prefetch(recipes);
     }
 
     /*
-     * Append text to the displayed document.
+     * Show a recipe in the text pane.  Documents are built on the document
+     * builder thread, unless one is already cached, and swapped in when
+     * they are ready.
      *
-     * @param text   Text to write
-     * @param style  Style to display text with
+     * @param recipe    Recipe to show
+     * @param servings  Number of servings to scale the ingredients to (only
+     *                  used if the recipe says how many it serves)
      */
-    private void appendText(String text, Style style)
+    private void showRecipe(final Recipe recipe, final int servings)
     {
-        try
+        final long request = ++documentRequest;
+        final Object event = RecipeEvents.getInstance().beginRender();
+
+        DefaultStyledDocument cached = documents.find(recipe, servings);
+        RecipeMetrics.getInstance().recordDocumentCache(cached != null);
+        if (cached != null)
         {
-            // Insert text at end of the document
-            doc.insertString(doc.getLength(), text, style);
+            showDocument(cached);
+            RecipeEvents.getInstance().endRender(event, recipe.getId(), servings, true);
+            return;
         }
-        catch (Exception e)
-        {
-            // Print error to stdout
-            System.err.println("Error while displaying recipe text content.");
-            e.printStackTrace();
 
-            // Don't show error dialog as this will be run in a loop and may
-            // make the program irritating to work with
-        }
+        documentBuilder.execute(new Runnable() {
+            @Override
+            public void run()
+            {
+                final DefaultStyledDocument built = documents.get(recipe, servings);
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        // Only show it if nothing else was asked for since
+                        if (request == documentRequest)
+                        {
+                            showDocument(built);
+                            RecipeEvents.getInstance().endRender(event, recipe.getId(), servings, false);
+                        }
+                    }
+                });
+            }
+        });
     }
 
-    /*
-     * Append text to the displayed document.
-     * New-lines are automatically inserted at end of text
-     *
-     * @param text   Text to write
-     * @param style  Style to display text with
-     */
-    private void appendLine(String text, Style style)
+    // Swap a document into the text pane
+    private void showDocument(StyledDocument doc)
     {
-        appendText(text + "\n", style);
+        pane.setStyledDocument(doc);
+
+        // We need to move textpane caret to the top so that the scrollbar
+        // is moved to the top also.
+        pane.setCaretPosition(0);
     }
 
     /*
-     * Clear all text from the displayed document
+     * Show the default text in the recipe viewer, and stop showing recipe that
+     * was being viewed.
      */
-    private void clearText()
+    public void viewNoRecipe()
     {
-        try
-        {
-            // Just remove from index 0 to the length of the doc
-            doc.remove(0, doc.getLength());
-        }
-        catch (Exception e)
-        {
-            // No need to handle this
-        }
+        // No recipe
+        currentRecipe = null;
+        servingsPanel.setVisible(false);
+
+        // Show an empty document (forgetting any document still being built)
+        ++documentRequest;
+        showDocument(new DefaultStyledDocument());
+
+        // No recipe so toolbar buttons (edit, delete) are disabled
+        SAT.onRecipeViewChanged(false);
     }
 }
@@ -10,11 +10,8 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
-import java.util.ArrayList;
 import java.util.HashMap;
 import javax.swing.*;
-import javax.xml.*;
-import javax.xml.bind.*;
 
 public class SAT
 {
@@ -25,8 +22,8 @@ public class SAT
     public static JFrame currentSearchFrame;
     public static RecipeSearchComponent currentSearchComponent;
 
-    // List of saved recipes, indexed by their titles
-    public static HashMap<String, Recipe> savedRecipes;
+    // The user's recipes: the store, the recipes file and searching
+    public static RecipeEngine engine;
 
     // Recipe viewer component
     public static RecipeViewComponent recipeViewer;
@@ -34,8 +31,8 @@ public class SAT
     // Recipe list component
     public static RecipeListComponent recipeList;
 
-    // List of currently-open editor frames
-    public static HashMap<String, JFrame> editorFrames = new HashMap<String, JFrame>();
+    // List of currently-open editor frames, indexed by recipe ID
+    public static HashMap<Integer, JFrame> editorFrames = new HashMap<Integer, JFrame>();
 
     // Toolbar buttons
     private static JButton tbBtnNew, tbBtnEdit, tbBtnDelete, tbBtnSearch;
@@ -45,10 +42,19 @@ public class SAT
     /*
      * Entry-point method
      *
-     * @param args  Command-line arguments (unused).
+     * @param args  Command-line arguments: "--serve [port]" serves the
+     *              recipes over HTTP instead of showing the window.
      */
     public static void main(String[] args)
     {
+        // Serve the recipes to other programs, without any user interface
+        if (args.length > 0 && args[0].equals("--serve"))
+        {
+            RecipeServer.serve(new File(RECIPES_PATH),
+                args.length > 1 ? Integer.parseInt(args[1]) : RecipeServer.DEFAULT_PORT);
+            return;
+        }
+
         // Check for unsupported Java versions
         String jvmVersion = System.getProperty("java.version");
         if (jvmVersion.startsWith("11") || jvmVersion.startsWith("12"))
@@ -63,6 +69,9 @@ public class SAT
             return;
         }
 
+        // Time event dispatch to find UI freezes, if asked to
+        EdtWatchdog.installIfEnabled();
+
         // Read recipes from disk
         if (!readRecipesFromDisk())
         {
@@ -77,6 +86,9 @@ public class SAT
             return;
         }
 
+        // Publish load, save and search metrics over JMX
+        RecipeMetrics.register(engine.getStore());
+
         // Enable font anti-aliasing
         System.setProperty("awt.useSystemAAFontSettings", "on");
         System.setProperty("swing.aatext", "true");
@@ -188,17 +200,12 @@ public class SAT
                     return;
                 }
 
-                // Delete the recipe
-                savedRecipes.remove(recipeViewer.currentRecipe.getTitle());
+                // Delete the recipe.  The recipe list and search window
+                // hear about it from the store.
+                engine.remove(recipeViewer.currentRecipe.getId());
 
                 // Update viewer state
                 recipeViewer.viewNoRecipe();
-
-                // Refresh recipe list
-                recipeList.refresh();
-
-                // Refresh tags list in recipe searcher
-                SAT.recipeSearchUpdate();
             }
         });
 
@@ -213,6 +220,34 @@ public class SAT
                 showRecipeSearchWindow();
             }
         });
+
+        // Toolbar: Sort order of the recipe list
+        toolbarPanel.add(new JLabel("Sort by:"));
+        final JComboBox<RecipeOrdering.Order> tbSortOrder =
+            new JComboBox<RecipeOrdering.Order>(RecipeOrdering.Order.values());
+        toolbarPanel.add(tbSortOrder);
+        tbSortOrder.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                // Re-list recipes in the chosen order
+                recipeList.setOrder((RecipeOrdering.Order)tbSortOrder.getSelectedItem());
+            }
+        });
+
+        // Toolbar: Event dispatch report (only with the EDT watchdog on)
+        if (EdtWatchdog.getInstance() != null)
+        {
+            JButton tbBtnEdtReport = new JButton("EDT report");
+            toolbarPanel.add(tbBtnEdtReport);
+            tbBtnEdtReport.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e)
+                {
+                    EdtWatchdog.getInstance().showReport(frameMain);
+                }
+            });
+        }
         toolbar.add(toolbarPanel);
 
         // Create recipe list pane (scrollable)
@@ -245,11 +280,11 @@ public class SAT
     /*
      * Displays a recipe in the recipe viewer pane.
      *
-     * @param title  Title of the recipe to view.
+     * @param id  ID of the recipe to view.
      */
-    public static void viewRecipe(String title)
+    public static void viewRecipe(int id)
     {
-        recipeViewer.viewRecipe(savedRecipes.get(title));
+        recipeViewer.viewRecipe(engine.get(id));
     }
 
     /*
@@ -271,37 +306,9 @@ public class SAT
     {
         try
         {
-            // Create the saved recipes list
-            savedRecipes = new HashMap<String, Recipe>();
-
-            // Create the container that we need to use
-            JAXBContext ctx = JAXBContext.newInstance(RecipeContainer.class);
-            Unmarshaller unmarshal = ctx.createUnmarshaller();
-
-			// Get the file context
-            File file = new File(RECIPES_PATH);
-			if (!file.exists())
-			{
-				// No recipes file yet
-				return true;
-			}
-
-            // Unmarshal the file
-            RecipeContainer container = (RecipeContainer)unmarshal.unmarshal(file);
-
-			if (container == null || !container.hasRecipes())
-			{
-				// No recipes
-				return true;
-			}
-
-            // Create the saved recipe hashmap from the arraylist values
-            savedRecipes = new HashMap<String, Recipe>(container.getSize());
-            for (Recipe r : container.getRecipes())
-            {
-                savedRecipes.put(r.getTitle(), r);
-            }
-
+            // Create the engine, and fill it from the file
+            engine = new RecipeEngine(new File(RECIPES_PATH));
+            engine.load();
             return true;
         }
         catch (Exception e)
@@ -319,25 +326,15 @@ public class SAT
     {
         try
         {
-            // Create the file
-            File file = new File(RECIPES_PATH);
-
-            // Create the container
-            RecipeContainer container = new RecipeContainer(
-                new ArrayList<Recipe>(savedRecipes.values()));
-
-            JAXBContext ctx = JAXBContext.newInstance(RecipeContainer.class);
-
-            // Create the marshaller, and enable pretty-print
-            Marshaller marshal = ctx.createMarshaller();
-            marshal.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-
-            // Convert to XML file
-            marshal.marshal(container, file);
+            // The engine writes a snapshot of the store, so that we always
+            // write a consistent set of recipes (even if this is ever called
+            // from a background thread)
+            engine.save();
         }
         catch (Exception e)
         {
             System.err.println("Error while saving recipes.");
+            RecipeMetrics.getInstance().recordSaveFailure();
             e.printStackTrace();
 
             // Show the error dialog
@@ -359,11 +356,11 @@ public class SAT
     {
         // Iterate over the existing frames dictionary, see if one already exists.
         if (recipeToEdit != null &&
-            editorFrames.containsKey(recipeToEdit.getTitle()))
+            editorFrames.containsKey(recipeToEdit.getId()))
         {
             // Recipe window already exists
             System.out.println("focusing existing recipe editor window");
-            JFrame f = editorFrames.get(recipeToEdit.getTitle());
+            JFrame f = editorFrames.get(recipeToEdit.getId());
             f.setVisible(true);
             f.toFront();
             f.requestFocus();
@@ -383,7 +380,7 @@ public class SAT
 
         // Add to active editor frames list
         if (recipeToEdit != null)
-            editorFrames.put(recipeToEdit.getTitle(), frame);
+            editorFrames.put(recipeToEdit.getId(), frame);
     }
 
     /*
@@ -414,19 +411,6 @@ public class SAT
         currentSearchFrame.setVisible(true);
     }
 
-    /*
-     * Updates info in recipe search window when recipe data has changed
-     */
-    public static void recipeSearchUpdate()
-    {
-        if (currentSearchComponent != null)
-        {
-            // Refresh tags and recipe lists
-            currentSearchComponent.refreshTagsList();
-            currentSearchComponent.refreshRecipeList();
-        }
-    }
-
     /*
      * Helper method to close JFrames
      *
@@ -452,6 +436,33 @@ public class SAT
         tbBtnDelete.setEnabled(hasRecipe);
     }
 
+    /*
+     * Helper method to size the cells of a recipe list.  Giving the list a
+     * prototype cell means it doesn't have to measure every row to lay
+     * itself out, which matters for very long lists.
+     *
+     * @param list  List to size
+     */
+    public static void sizeListCells(JList<String> list)
+    {
+        // Use the longest title of any recipe as the prototype, so that no
+        // titles are cut off.  The ordering keeps track of it as recipes are
+        // added, so no titles are looked at here.  Fall back to some text so
+        // that empty lists get a sensible row height.
+        String prototype = engine.getOrdering().getLongestTitle();
+        if (prototype.length() <= 0)
+        {
+            prototype = "Recipe";
+        }
+
+        // Setting the prototype relays out the list, so skip it if nothing
+        // changed
+        if (!prototype.equals(list.getPrototypeCellValue()))
+        {
+            list.setPrototypeCellValue(prototype);
+        }
+    }
+
     /*
      * Helper method to create left-aligned JPanel for use in a BoxLayout.
      * This works by using a stupid hack where the label is contained in a
@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * ShoppingList.java
+ *
+ * Merges the ingredients of many recipes into one shopping list.  Lines for
+ * the same item are added together where their units are compatible (e.g.
+ * "1 cup milk" and "250 ml milk"), and kept as separate entries where they
+ * aren't (e.g. "2 cloves garlic" and "1 tsp garlic").  Lines with no item
+ * the parser could find are kept as they were written, to be listed apart.
+ *
+ * Items are matched by their IngredientDictionary id, so different ways of
+ * writing the same ingredient ("garlic cloves", "clove of garlic") end up
+ * on one entry, listed as the item was first written.  Stored recipes' ids
+ * come from the store's IngredientIndex, so a recipe's lines are only
+ * canonicalised the first time it is shopped for.
+ *
+ * Recipes are added one at a time in a single pass, using the parsed lines
+ * the recipes already keep.  Entries live in parallel primitive arrays, and
+ * an item's entries are found through an array of entry numbers indexed by
+ * ingredient id, so adding a line allocates nothing once the arrays have
+ * grown to size.
+ */
+public class ShoppingList
+{
+    // Marks no entry
+    private static final int NONE = -1;
+
+    // First entry for each item, indexed by ingredient id
+    private int[] firstEntry = newTable(64);
+
+    // Entries, in the order they were first seen.  Each item's entries
+    // (one per group of compatible units) are chained through nextEntry.
+    private int[] items = new int[64];
+    private String[] names = new String[64];
+    private IngredientUnit[] units = new IngredientUnit[64];
+    private double[] totals = new double[64];
+    private double[] totalsMax = new double[64];
+    private int[] nextEntry = new int[64];
+    private int entryCount = 0;
+
+    // Lines naming no known item, as written
+    private final ArrayList<String> unparsed = new ArrayList<String>();
+
+    // Number of recipes added
+    private int recipeCount = 0;
+
+    /*
+     * Add all the ingredients of a recipe
+     *
+     * @param recipe  Recipe to add
+     */
+    public void add(Recipe recipe)
+    {
+        add(recipe, IngredientDictionary.toLineIds(recipe.getParsedIngredients()));
+    }
+
+    /*
+     * Add all the ingredients of a recipe, whose lines' ingredient ids are
+     * already known
+     *
+     * @param recipe   Recipe to add
+     * @param lineIds  Ingredient id of each of its parsed lines (as from
+     *                 IngredientIndex.getLineIds)
+     */
+    public void add(Recipe recipe, int[] lineIds)
+    {
+        ParsedIngredient[] ingredients = recipe.getParsedIngredients();
+        for (int i = 0; i < ingredients.length; ++i)
+        {
+            add(ingredients[i], lineIds[i]);
+        }
+        ++recipeCount;
+    }
+
+    /*
+     * Add a single ingredient line
+     *
+     * @param ingredient  Parsed line to add
+     */
+    public void add(ParsedIngredient ingredient)
+    {
+        add(ingredient, IngredientDictionary.idOf(ingredient.getItem()));
+    }
+
+    // Add a line naming the ingredient with an id (-1 for none)
+    private void add(ParsedIngredient ingredient, int item)
+    {
+        if (item < 0)
+        {
+            // Lines the parser couldn't find an item in are listed as they
+            // were written (blank lines aside)
+            if (ingredient.getRaw().trim().length() > 0)
+            {
+                unparsed.add(ingredient.getRaw());
+            }
+            return;
+        }
+
+        // Find the item's entry for a compatible unit, making one if needed
+        IngredientUnit unit = ingredient.hasQuantity() ? ingredient.getUnit() : null;
+        int entry = findEntry(item, ingredient.getItem(), unit, ingredient.hasQuantity());
+
+        // Add on the quantity, converted to the entry's unit
+        if (ingredient.hasQuantity())
+        {
+            if (Double.isNaN(totals[entry]))
+            {
+                // The entry so far has no quantity; it takes this one's unit
+                units[entry] = unit;
+                totals[entry] = 0;
+                totalsMax[entry] = 0;
+            }
+            double q = ingredient.getQuantity(), qMax = ingredient.getQuantityMax();
+            if (unit != null && unit != units[entry])
+            {
+                q = unit.convert(q, units[entry]);
+                qMax = unit.convert(qMax, units[entry]);
+            }
+            totals[entry] += q;
+            totalsMax[entry] += qMax;
+        }
+    }
+
+    // @return number of recipes added
+    public int getRecipeCount()
+    {
+        return recipeCount;
+    }
+
+    // @return number of entries on the list
+    public int size()
+    {
+        return entryCount;
+    }
+
+    /*
+     * Get the ingredient lines that couldn't be matched to an item, so they
+     * can be shown as they were written rather than lost
+     *
+     * @return the lines, in the order they were added
+     */
+    public ArrayList<String> getUnparsedLines()
+    {
+        return unparsed;
+    }
+
+    /*
+     * Get the list as lines of text, in the order items were first seen.
+     * Entries without a quantity are listed by item alone.
+     *
+     * @return the lines
+     */
+    public ArrayList<String> getLines()
+    {
+        ArrayList<String> lines = new ArrayList<String>(entryCount);
+        for (int i = 0; i < entryCount; ++i)
+        {
+            StringBuilder sb = new StringBuilder();
+            if (!Double.isNaN(totals[i]))
+            {
+                sb.append(ParsedIngredient.formatQuantity(totals[i]));
+                if (totalsMax[i] != totals[i])
+                {
+                    sb.append('-').append(ParsedIngredient.formatQuantity(totalsMax[i]));
+                }
+                sb.append(' ');
+                if (units[i] != null)
+                {
+                    sb.append(units[i].getSymbol(totalsMax[i])).append(' ');
+                }
+            }
+            sb.append(names[i]);
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    /*
+     * Find the entry to add a line to
+     *
+     * @param item         Ingredient id of the item
+     * @param name         Item as written
+     * @param unit         Unit of the line (null if none)
+     * @param hasQuantity  Whether the line has a quantity
+     *
+     * @return the entry number
+     */
+    private int findEntry(int item, String name, IngredientUnit unit, boolean hasQuantity)
+    {
+        if (item >= firstEntry.length)
+        {
+            int[] grown = newTable(Math.max(item + 1, firstEntry.length * 2));
+            System.arraycopy(firstEntry, 0, grown, 0, firstEntry.length);
+            firstEntry = grown;
+        }
+
+        // New item
+        if (firstEntry[item] == NONE)
+        {
+            int added = newEntry(item, name, unit, hasQuantity);
+            firstEntry[item] = added;
+            return added;
+        }
+
+        // Known item; look for an entry with compatible units, and add a
+        // new one to the end of the chain if there isn't one
+        int last = NONE;
+        for (int entry = firstEntry[item]; entry != NONE; entry = nextEntry[entry])
+        {
+            if (accepts(entry, unit, hasQuantity))
+            {
+                return entry;
+            }
+            last = entry;
+        }
+        int added = newEntry(item, name, unit, hasQuantity);
+        nextEntry[last] = added;
+        return added;
+    }
+
+    // @return whether an entry can take a line with a unit and quantity
+    private boolean accepts(int entry, IngredientUnit unit, boolean hasQuantity)
+    {
+        if (!hasQuantity || Double.isNaN(totals[entry]))
+        {
+            // Lines without a quantity (e.g. "salt and pepper") only need
+            // to be listed once, so join any entry for the item; and an
+            // entry with no quantity so far can take any line's
+            return true;
+        }
+        if (unit == null || units[entry] == null)
+        {
+            return unit == units[entry];
+        }
+        return unit.isCompatible(units[entry]);
+    }
+
+    // @return number of a new entry for an item
+    private int newEntry(int item, String name, IngredientUnit unit, boolean hasQuantity)
+    {
+        if (entryCount == items.length)
+        {
+            int length = items.length * 2;
+            items = grow(items, length);
+            String[] grownNames = new String[length];
+            System.arraycopy(names, 0, grownNames, 0, entryCount);
+            names = grownNames;
+            IngredientUnit[] grownUnits = new IngredientUnit[length];
+            System.arraycopy(units, 0, grownUnits, 0, entryCount);
+            units = grownUnits;
+            totals = grow(totals, length);
+            totalsMax = grow(totalsMax, length);
+            nextEntry = grow(nextEntry, length);
+        }
+
+        int entry = entryCount++;
+        items[entry] = item;
+        names[entry] = name;
+        units[entry] = unit;
+        totals[entry] = hasQuantity ? 0 : Double.NaN;
+        totalsMax[entry] = totals[entry];
+        nextEntry[entry] = NONE;
+        return entry;
+    }
+
+    private static int[] newTable(int length)
+    {
+        int[] t = new int[length];
+        Arrays.fill(t, NONE);
+        return t;
+    }
+
+    private static double[] grow(double[] a, int length)
+    {
+        double[] grown = new double[length];
+        System.arraycopy(a, 0, grown, 0, a.length);
+        return grown;
+    }
+
+    private static int[] grow(int[] a, int length)
+    {
+        int[] grown = new int[length];
+        System.arraycopy(a, 0, grown, 0, a.length);
+        return grown;
+    }
+}
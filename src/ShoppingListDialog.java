@@ -0,0 +1,93 @@
+import java.awt.*;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.*;
+import java.util.List;
+
+/*
+ * ShoppingListDialog.java
+ *
+ * Dialog showing the merged shopping list for a number of recipes, followed
+ * by any lines whose item couldn't be worked out, with a button to copy the
+ * list to the clipboard.
+ */
+public class ShoppingListDialog extends JDialog
+{
+    /*
+     * Make a shopping list for some recipes and show it
+     *
+     * @param owner    Window the dialog belongs to
+     * @param recipes  Recipes to shop for
+     */
+    public ShoppingListDialog(Window owner, List<Recipe> recipes)
+    {
+        super(owner, "Shopping list", ModalityType.MODELESS);
+
+        // Merge the recipes' ingredients in one pass
+        IngredientIndex index = SAT.engine.getIngredientIndex();
+        ShoppingList list = new ShoppingList();
+        for (Recipe recipe : recipes)
+        {
+            list.add(recipe, index.getLineIds(recipe));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String line : list.getLines())
+        {
+            sb.append(line).append('\n');
+        }
+        if (!list.getUnparsedLines().isEmpty())
+        {
+            // Lines with no recognisable item are listed as written, so
+            // nothing drops off the list
+            sb.append("\nUnparsed items:\n");
+            for (String line : list.getUnparsedLines())
+            {
+                sb.append(line).append('\n');
+            }
+        }
+        final String text = sb.toString();
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(new EmptyBorder(16, 16, 16, 16));
+        setContentPane(panel);
+
+        panel.add(new JLabel(String.format("%,d items for %,d recipes:",
+            list.size() + list.getUnparsedLines().size(), list.getRecipeCount())), BorderLayout.NORTH);
+
+        // List itself
+        JTextArea textArea = new JTextArea(text, 20, 40);
+        textArea.setEditable(false);
+        textArea.setCaretPosition(0);
+        panel.add(new JScrollPane(textArea), BorderLayout.CENTER);
+
+        // Buttons
+        JPanel ctrlsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        panel.add(ctrlsPanel, BorderLayout.SOUTH);
+
+        JButton btnCopy = new JButton("Copy");
+        ctrlsPanel.add(btnCopy);
+        btnCopy.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                StringSelection selection = new StringSelection(text);
+                Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
+            }
+        });
+
+        JButton btnClose = new JButton("Close");
+        ctrlsPanel.add(btnClose);
+        btnClose.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                dispose();
+            }
+        });
+
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        pack();
+        setLocationRelativeTo(owner);
+    }
+}
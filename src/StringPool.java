@@ -0,0 +1,76 @@
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/*
+ * StringPool.java
+ *
+ * Pool of shared string instances.  Across a large collection the same tags
+ * and ingredient lines turn up over and over, and both the XML loader and
+ * the editor create a fresh copy of each one.  Running them through the pool
+ * means every equal value ends up as one shared instance.
+ *
+ * The pool only holds its strings weakly, so a value drops out once no
+ * recipe uses it any more.  (String.intern() would also work, but keeps
+ * values in the JVM's string table, which is sized for literals rather
+ * than user data.)
+ */
+public class StringPool
+{
+    // Pooled strings.  Each value refers weakly to its own key, so the map
+    // never keeps a string alive by itself.
+    private static final WeakHashMap<String, WeakReference<String>> pool =
+        new WeakHashMap<String, WeakReference<String>>();
+
+    /*
+     * Get the pooled instance of a string
+     *
+     * @param s  String to look up (may be null)
+     *
+     * @return an equal string from the pool, or s itself if it is the first
+     *         of its value
+     */
+    public static synchronized String intern(String s)
+    {
+        if (s == null)
+        {
+            return null;
+        }
+
+        WeakReference<String> ref = pool.get(s);
+        if (ref != null)
+        {
+            String pooled = ref.get();
+            if (pooled != null)
+            {
+                return pooled;
+            }
+        }
+
+        pool.put(s, new WeakReference<String>(s));
+        return s;
+    }
+
+    /*
+     * Replace every string in a list with its pooled instance
+     *
+     * @param list  List to update in place (may be null)
+     */
+    public static void internAll(List<String> list)
+    {
+        if (list == null)
+        {
+            return;
+        }
+        for (int i = 0; i < list.size(); ++i)
+        {
+            list.set(i, intern(list.get(i)));
+        }
+    }
+
+    // @return number of distinct strings currently pooled
+    public static synchronized int size()
+    {
+        return pool.size();
+    }
+}
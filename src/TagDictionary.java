@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/*
+ * TagDictionary.java
+ *
+ * Global dictionary giving every tag name a small integer id.  Recipes keep
+ * their tags as a sorted array of ids with no duplicates, so checking
+ * whether a recipe has a tag is a binary search, and comparing two tag sets
+ * is a single merge pass, with no string comparisons at all.
+ *
+ * Ids are handed out in the order tags are first seen, and are never reused
+ * within a run.  They are not saved; the recipes file still stores tag
+ * names.
+ */
+public class TagDictionary
+{
+    // Shared empty id set
+    public static final int[] NO_TAGS = new int[0];
+
+    // Tag names, indexed by id
+    private static final ArrayList<String> names = new ArrayList<String>();
+
+    // Tag ids by name
+    private static final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+
+    /*
+     * Get the id of a tag, giving it one if it's new
+     *
+     * @param tag  Tag name
+     *
+     * @return the tag's id
+     */
+    public static synchronized int idOf(String tag)
+    {
+        Integer id = ids.get(tag);
+        if (id == null)
+        {
+            id = names.size();
+            tag = StringPool.intern(tag);
+            names.add(tag);
+            ids.put(tag, id);
+        }
+        return id;
+    }
+
+    /*
+     * Look up the id of a tag without adding it
+     *
+     * @param tag  Tag name
+     *
+     * @return the tag's id, or -1 if no tag has that name
+     */
+    public static synchronized int find(String tag)
+    {
+        Integer id = ids.get(tag);
+        return id == null ? -1 : id;
+    }
+
+    // @return the name of the tag with an id
+    public static synchronized String nameOf(int id)
+    {
+        return names.get(id);
+    }
+
+    /*
+     * Convert tag names to a sorted, duplicate-free id set
+     *
+     * @param tags  Tag names
+     * @param add   Whether to give unknown tags ids (otherwise they are left
+     *              out)
+     *
+     * @return the id set
+     */
+    public static int[] toIds(Collection<String> tags, boolean add)
+    {
+        if (tags.isEmpty())
+        {
+            return NO_TAGS;
+        }
+
+        int[] result = new int[tags.size()];
+        int count = 0;
+        for (String tag : tags)
+        {
+            int id = add ? idOf(tag) : find(tag);
+            if (id >= 0)
+            {
+                result[count++] = id;
+            }
+        }
+        return sortedSet(result, count);
+    }
+
+    /*
+     * Sort ids and drop duplicates
+     *
+     * @param ids    Array of ids (sorted in place)
+     * @param count  Number of ids in the array to use
+     *
+     * @return the id set (ids itself if it was already exactly that)
+     */
+    public static int[] sortedSet(int[] ids, int count)
+    {
+        Arrays.sort(ids, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; ++i)
+        {
+            if (unique == 0 || ids[i] != ids[unique - 1])
+            {
+                ids[unique++] = ids[i];
+            }
+        }
+        if (unique == 0)
+        {
+            return NO_TAGS;
+        }
+        return unique == ids.length ? ids : Arrays.copyOf(ids, unique);
+    }
+
+    // @return whether an id set contains an id
+    public static boolean contains(int[] set, int id)
+    {
+        return Arrays.binarySearch(set, id) >= 0;
+    }
+
+    // @return whether two id sets have any id in common
+    public static boolean intersects(int[] a, int[] b)
+    {
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length)
+        {
+            if (a[i] < b[j])
+            {
+                ++i;
+            }
+            else if (a[i] > b[j])
+            {
+                ++j;
+            }
+            else
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // @return number of tags that have been given ids
+    public static synchronized int size()
+    {
+        return names.size();
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * TagRegistry.java
+ *
+ * Keeps track of every tag in use, along with the number of recipes using
+ * it.  The registry is an index of the recipe store, updated as recipes are
+ * added and removed, so the tag vocabulary never needs to be rebuilt by
+ * scanning every recipe.
+ *
+ * Listeners are told when a tag first comes into use, when its last recipe
+ * goes away, and when its count changes in between.
+ */
+public class TagRegistry implements RecipeStoreListener
+{
+    /*
+     * Interface for classes that want to hear about tag changes
+     */
+    public interface Listener
+    {
+        // A tag is now used by one recipe, where it wasn't before
+        void tagAdded(String tag);
+
+        // A tag is no longer used by any recipe
+        void tagRemoved(String tag);
+
+        // The number of recipes using a tag (or the number of untagged
+        // recipes, when tag is null) changed, but didn't cross zero
+        void tagCountChanged(String tag, int count);
+    }
+
+    // Number of recipes using each tag, indexed by tag id
+    private int[] counts = new int[16];
+
+    // Number of recipes with no tags at all
+    private int untaggedCount = 0;
+
+    // Registered listeners
+    private final ArrayList<Listener> listeners = new ArrayList<Listener>();
+
+    /*
+     * Count the tags of a recipe which has been added
+     *
+     * @param recipe  The added recipe
+     */
+    public void addRecipe(Recipe recipe)
+    {
+        if (!recipe.hasTags())
+        {
+            ++untaggedCount;
+            fireCountChanged(null, untaggedCount);
+            return;
+        }
+
+        for (int id : recipe.getTagIds())
+        {
+            if (id >= counts.length)
+            {
+                counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+            }
+
+            if (counts[id]++ == 0)
+            {
+                // First recipe using this tag
+                String tag = TagDictionary.nameOf(id);
+                for (Listener l : listeners)
+                {
+                    l.tagAdded(tag);
+                }
+                continue;
+            }
+
+            fireCountChanged(TagDictionary.nameOf(id), counts[id]);
+        }
+    }
+
+    /*
+     * Uncount the tags of a recipe which has been removed
+     *
+     * @param recipe  The removed recipe
+     */
+    public void removeRecipe(Recipe recipe)
+    {
+        if (!recipe.hasTags())
+        {
+            --untaggedCount;
+            fireCountChanged(null, untaggedCount);
+            return;
+        }
+
+        for (int id : recipe.getTagIds())
+        {
+            if (getCount(id) <= 0)
+            {
+                // Not counted (shouldn't happen)
+                continue;
+            }
+
+            if (--counts[id] == 0)
+            {
+                // That was the last recipe using this tag
+                String tag = TagDictionary.nameOf(id);
+                for (Listener l : listeners)
+                {
+                    l.tagRemoved(tag);
+                }
+                continue;
+            }
+
+            fireCountChanged(TagDictionary.nameOf(id), counts[id]);
+        }
+    }
+
+    @Override
+    public void recipesChanged(List<RecipeStoreEvent> events)
+    {
+        for (RecipeStoreEvent e : events)
+        {
+            // Count the new version before uncounting the old one, so tags
+            // kept across an edit never drop to zero in between
+            if (e.getNewRecipe() != null)
+            {
+                addRecipe(e.getNewRecipe());
+            }
+            if (e.getOldRecipe() != null)
+            {
+                removeRecipe(e.getOldRecipe());
+            }
+        }
+    }
+
+    // Notify listeners that a count changed
+    private void fireCountChanged(String tag, int count)
+    {
+        for (Listener l : listeners)
+        {
+            l.tagCountChanged(tag, count);
+        }
+    }
+
+    // @return number of recipes using a tag
+    public int getCount(String tag)
+    {
+        return getCount(TagDictionary.find(tag));
+    }
+
+    // @return number of recipes using the tag with an id
+    public int getCount(int id)
+    {
+        return id >= 0 && id < counts.length ? counts[id] : 0;
+    }
+
+    // @return number of recipes with no tags
+    public int getUntaggedCount()
+    {
+        return untaggedCount;
+    }
+
+    // @return a new set of all tags in use
+    public Set<String> getTags()
+    {
+        HashSet<String> tags = new HashSet<String>();
+        for (int id = 0; id < counts.length; ++id)
+        {
+            if (counts[id] > 0)
+            {
+                tags.add(TagDictionary.nameOf(id));
+            }
+        }
+        return tags;
+    }
+
+    // Listen for tag changes
+    public void addListener(Listener l)
+    {
+        listeners.add(l);
+    }
+    public void removeListener(Listener l)
+    {
+        listeners.remove(l);
+    }
+}